@@ -0,0 +1,70 @@
+package ru.sbertest.react;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.springframework.util.ReflectionUtils;
+import ru.sbertest.react.mappers.StateMapper;
+import ru.sbertest.react.repositories.StateRepository;
+import ru.sbertest.react.springbatis.BaseDao;
+import ru.sbertest.react.springbatis.SpringReactiveTransactionFactory;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * In-memory H2 {@code states} table and MyBatis wiring for benchmarks, without a Spring context.
+ */
+final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    static JdbcConnectionPool create(String name, int rows) throws SQLException {
+        JdbcConnectionPool dataSource = JdbcConnectionPool.create(
+                "jdbc:h2:mem:" + name + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS states");
+                statement.execute("CREATE TABLE states (id BIGINT PRIMARY KEY, prev_state_id BIGINT, " +
+                        "next_state_id BIGINT, state INT)");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO states VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= rows; i++) {
+                    insert.setLong(1, i);
+                    insert.setObject(2, i == 1 ? null : (long) i - 1);
+                    insert.setObject(3, i == rows ? null : (long) i + 1);
+                    insert.setInt(4, i % 9);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+        return dataSource;
+    }
+
+    static SqlSessionFactory sqlSessionFactory(DataSource dataSource, Interceptor... interceptors) {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setEnvironment(new Environment("jmh", new SpringReactiveTransactionFactory(), dataSource));
+        for (Interceptor interceptor : interceptors) {
+            configuration.addInterceptor(interceptor);
+        }
+        configuration.addMapper(StateMapper.class);
+        return new MybatisSqlSessionFactoryBuilder().build(configuration);
+    }
+
+    static StateRepository repository(SqlSessionFactory sqlSessionFactory, DataSource dataSource) {
+        StateRepository repository = new StateRepository(sqlSessionFactory);
+        Field field = ReflectionUtils.findField(BaseDao.class, "dataSource");
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, repository, dataSource);
+        return repository;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.sbertest.react;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.sbertest.react.entity.State;
+import ru.sbertest.react.springbatis.PrecompiledResultMappingInterceptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code selectList} into {@link State} with the default reflective MyBatis mapping and with
+ * {@link PrecompiledResultMappingInterceptor}; {@code rows} is the size of each result.
+ * Run with {@code ./gradlew jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class StateMappingBenchmark {
+
+    private static final String MAPPER_CLASS = "ru.sbertest.react.mappers.StateMapper.";
+
+    @Param({"default", "precompiled"})
+    String mapping;
+
+    @Param({"1", "1000"})
+    int rows;
+
+    JdbcConnectionPool dataSource;
+
+    SqlSessionFactory sqlSessionFactory;
+
+    Map<String, Object> param;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = BenchmarkDatabase.create("mapping", 10000);
+        Interceptor[] interceptors = "precompiled".equals(mapping)
+                ? new Interceptor[]{new PrecompiledResultMappingInterceptor("ru.sbertest.react.entity")}
+                : new Interceptor[0];
+        sqlSessionFactory = BenchmarkDatabase.sqlSessionFactory(dataSource, interceptors);
+        param = new MapperMethod.ParamMap<>();
+        QueryWrapper<State> wrapper = Wrappers.<State>query().last("LIMIT " + rows);
+        param.put("ew", wrapper);
+        param.put("param1", wrapper);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public List<State> selectList() {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            return session.selectList(MAPPER_CLASS + "selectList", param);
+        }
+    }
+}
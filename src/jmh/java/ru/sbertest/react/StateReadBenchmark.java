@@ -0,0 +1,98 @@
+package ru.sbertest.react;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.sbertest.react.entity.State;
+import ru.sbertest.react.repositories.StateRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full read of {@code states} from an in-memory H2 database: MyBatis result mapping into {@link State}
+ * objects against the columnar {@link StateRepository#selectColumnsByState} mode.
+ * Run with {@code ./gradlew jmh}; add {@code -prof gc} to jmh args to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class StateReadBenchmark {
+
+    private static final String MAPPER_CLASS = "ru.sbertest.react.mappers.StateMapper.";
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"4096"})
+    int chunkSize;
+
+    JdbcConnectionPool dataSource;
+
+    SqlSessionFactory sqlSessionFactory;
+
+    StateRepository repository;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = BenchmarkDatabase.create("read", rows);
+        sqlSessionFactory = BenchmarkDatabase.sqlSessionFactory(dataSource);
+        repository = BenchmarkDatabase.repository(sqlSessionFactory, dataSource);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public long mappedObjects() {
+        Map<String, Object> param = new MapperMethod.ParamMap<>();
+        QueryWrapper<State> wrapper = Wrappers.query();
+        param.put("ew", wrapper);
+        param.put("param1", wrapper);
+        long sum = 0;
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            List<State> states = session.selectList(MAPPER_CLASS + "selectList", param);
+            for (State state : states) {
+                sum += state.getId() + state.getState();
+                if (state.getNextStateId() != null) {
+                    sum += state.getNextStateId();
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long columnarBatches() {
+        long[] sum = new long[1];
+        repository.selectColumnsByState(null, chunkSize).doOnNext(batch -> {
+            for (int row = 0; row < batch.size(); row++) {
+                sum[0] += batch.getId(row) + batch.getState(row);
+                if (!batch.isNextStateIdNull(row)) {
+                    sum[0] += batch.getNextStateId(row);
+                }
+            }
+        }).blockLast();
+        return sum[0];
+    }
+}
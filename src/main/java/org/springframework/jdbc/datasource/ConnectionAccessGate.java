@@ -0,0 +1,39 @@
+package org.springframework.jdbc.datasource;
+
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * Admission control in front of JDBC connection acquisition. A permit is taken before a connection is
+ * fetched and held until the work on it is done: for a transaction that is the whole transaction,
+ * otherwise a single non-transactional call.
+ */
+public interface ConnectionAccessGate {
+
+    /**
+     * Emits a permit once the work may go ahead, or fails with {@link ConnectionAccessRejectedException}.
+     *
+     * @param context    the subscriber context of the caller
+     * @param definition the transaction being started, {@code null} for non-transactional work
+     */
+    Mono<Permit> acquire(ContextView context, @Nullable TransactionDefinition definition);
+
+    default <T> Flux<T> guard(Flux<T> work) {
+        return Flux.usingWhen(Mono.deferContextual(context -> acquire(context, null)),
+                permit -> work,
+                permit -> Mono.fromRunnable(() -> permit.release(true)),
+                (permit, ex) -> Mono.fromRunnable(() -> permit.release(false)),
+                permit -> Mono.fromRunnable(() -> permit.release(false)));
+    }
+
+    interface Permit {
+
+        /**
+         * Returns the permit. {@code successful} is {@code false} when the work failed or was cancelled.
+         */
+        void release(boolean successful);
+    }
+}
@@ -0,0 +1,15 @@
+package org.springframework.jdbc.datasource;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * Thrown by a {@link ConnectionAccessGate} that sheds load instead of letting work wait for a connection.
+ */
+public class ConnectionAccessRejectedException extends TransientDataAccessResourceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConnectionAccessRejectedException(String msg) {
+        super(msg);
+    }
+}
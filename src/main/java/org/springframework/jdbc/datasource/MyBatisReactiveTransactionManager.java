@@ -68,6 +68,18 @@ public class MyBatisReactiveTransactionManager extends AbstractReactiveTransacti
 
     private boolean enforceReadOnly = false;
 
+    @Nullable
+    public ConnectionAccessGate getAccessGate() {
+        return accessGate;
+    }
+
+    public void setAccessGate(@Nullable ConnectionAccessGate accessGate) {
+        this.accessGate = accessGate;
+    }
+
+    @Nullable
+    private ConnectionAccessGate accessGate;
+
     public MyBatisReactiveTransactionManager() {
     }
 
@@ -107,7 +119,15 @@ public class MyBatisReactiveTransactionManager extends AbstractReactiveTransacti
                 return txObject.getConnectionHolder().getConnection();
             }
         });
-        return connectionMono.flatMap(con-> prepareTransactionalConnection(con, definition, transaction)
+        Mono<Void> admission = Mono.defer(() -> {
+            if (this.accessGate == null ||
+                    (txObject.hasConnectionHolder() && !txObject.getConnectionHolder().isSynchronizedWithTransaction())) {
+                return Mono.empty();
+            }
+            return Mono.deferContextual(ctx -> this.accessGate.acquire(ctx, definition))
+                    .doOnNext(txObject::setPermit).then();
+        });
+        return admission.then(connectionMono).flatMap(con-> prepareTransactionalConnection(con, definition, transaction)
                 .doOnSuccess(v -> {
                     txObject.getConnectionHolder().setTransactionActive(true);
                     int timeout = determineTimeout(definition);
@@ -124,9 +144,13 @@ public class MyBatisReactiveTransactionManager extends AbstractReactiveTransacti
                     }
                     return Mono.error(e);
                 })).onErrorResume(e -> {
+            txObject.releasePermit(false);
+            if (e instanceof ConnectionAccessRejectedException) {
+                return Mono.error(e);
+            }
             CannotCreateTransactionException ex = new CannotCreateTransactionException("Could not open JDBC Connection for transaction", e);
             return Mono.error(ex);
-        }).then();
+        }).doOnCancel(() -> txObject.releasePermit(false)).then();
     }
 
     @Override
@@ -241,6 +265,7 @@ public class MyBatisReactiveTransactionManager extends AbstractReactiveTransacti
                 }
                 finally {
                     txObject.getConnectionHolder().clear();
+                    txObject.releasePermit(true);
                 }
                 return Mono.empty();
             }));
@@ -278,6 +303,9 @@ public class MyBatisReactiveTransactionManager extends AbstractReactiveTransacti
 
         private boolean mustRestoreAutoCommit;
 
+        @Nullable
+        private ConnectionAccessGate.Permit permit;
+
         public void setConnectionHolder(@Nullable ConnectionHolder connectionHolder, boolean newConnectionHolder) {
             super.setConnectionHolder(connectionHolder);
             this.newConnectionHolder = newConnectionHolder;
@@ -299,6 +327,17 @@ public class MyBatisReactiveTransactionManager extends AbstractReactiveTransacti
             getConnectionHolder().setRollbackOnly();
         }
 
+        public void setPermit(@Nullable ConnectionAccessGate.Permit permit) {
+            this.permit = permit;
+        }
+
+        public void releasePermit(boolean successful) {
+            if (this.permit != null) {
+                this.permit.release(successful);
+                this.permit = null;
+            }
+        }
+
         @Override
         public boolean isRollbackOnly() {
             return getConnectionHolder().isRollbackOnly();
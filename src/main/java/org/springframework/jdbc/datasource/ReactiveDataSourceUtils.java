@@ -119,29 +119,33 @@ public class ReactiveDataSourceUtils {
         if (con == null) {
             return Mono.empty();
         }
-        Mono<Void> result = Mono.empty();
+        Mono<Boolean> mustClose = Mono.just(Boolean.TRUE);
         if (dataSource != null) {
-            result = result.then(TransactionContextManager.currentContext()
+            mustClose = TransactionContextManager.currentContext()
                     .map(TransactionSynchronizationManager::new)
-                    .flatMap(sm->{
+                    .map(sm -> {
                         ConnectionHolder conHolder = (ConnectionHolder) sm.getResource(dataSource);
                         if (conHolder != null && connectionEquals(conHolder, con)) {
                             // It's the transactional Connection: Don't close it.
                             conHolder.released();
+                            return Boolean.FALSE;
                         }
-                        try {
-                            doCloseConnection(con, dataSource);
-                        } catch (SQLException e) {
-                            return Mono.error(e);
-                        }
-                        return Mono.empty();
-                    }));
+                        return Boolean.TRUE;
+                    }).onErrorReturn(NoTransactionException.class, Boolean.TRUE);
         }
-        result = result.then(Mono.fromCallable(()->{
-            doCloseConnection(con, dataSource);
-            return Mono.empty();
-        }).then());
-        return result;
+        return mustClose.filter(Boolean::booleanValue)
+                .flatMap(close -> Mono.fromCallable(() -> {
+                    doCloseConnection(con, dataSource);
+                    return Mono.empty();
+                })).then();
+    }
+
+    public static Mono<Boolean> isTransactionBound(DataSource dataSource) {
+        Assert.notNull(dataSource, "No DataSource specified");
+        return TransactionContextManager.currentContext()
+                .map(TransactionSynchronizationManager::new)
+                .map(sm -> sm.getResource(dataSource) != null)
+                .onErrorReturn(NoTransactionException.class, Boolean.FALSE);
     }
 
     public static void doCloseConnection(Connection con, @Nullable DataSource dataSource) throws SQLException {
@@ -0,0 +1,87 @@
+package ru.sbertest.react;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.ConnectionAccessGate;
+import ru.sbertest.react.springbatis.AdaptiveConcurrencyLimiter;
+import ru.sbertest.react.springbatis.ConnectionPriority;
+import ru.sbertest.react.springbatis.PriorityLaneGate;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnExpression("${react.limiter.enabled:false} or ${react.lanes.enabled:false}")
+public class AccessGateConfig {
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${react.limiter.enabled:false}")
+    boolean limiterEnabled;
+
+    @Value("${react.limiter.initial-limit:10}")
+    int initialLimit;
+
+    @Value("${react.limiter.min-limit:1}")
+    int minLimit;
+
+    @Value("${react.limiter.max-limit:${spring.datasource.hikari.maximum-pool-size:10}}")
+    int maxLimit;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    int poolSize;
+
+    @Value("${react.limiter.max-queue:1000}")
+    int maxQueue;
+
+    @Value("${react.limiter.max-wait:1s}")
+    Duration maxWait;
+
+    @Value("${react.lanes.enabled:false}")
+    boolean lanesEnabled;
+
+    @Value("${react.lanes.capacity:${spring.datasource.hikari.maximum-pool-size:10}}")
+    int laneCapacity;
+
+    @Value("${react.lanes.interactive.reserved:3}")
+    int interactiveReserved;
+
+    @Value("${react.lanes.interactive.weight:4}")
+    int interactiveWeight;
+
+    @Value("${react.lanes.batch.reserved:0}")
+    int batchReserved;
+
+    @Value("${react.lanes.batch.weight:1}")
+    int batchWeight;
+
+    @Value("${react.lanes.max-wait:5s}")
+    Duration laneMaxWait;
+
+    /**
+     * Priority lanes decide who gets a connection first; with the limiter enabled as well they share only
+     * as many connections as the limiter currently allows. The limit never goes above the pool size: past
+     * that, work would only queue inside the pool, where latency no longer tells the limiter anything.
+     */
+    @Bean
+    public ConnectionAccessGate connectionAccessGate() {
+        int limiterMax = Math.min(maxLimit, poolSize);
+        AdaptiveConcurrencyLimiter limiter = limiterEnabled
+                ? new AdaptiveConcurrencyLimiter(Math.min(initialLimit, limiterMax), minLimit, limiterMax, maxQueue,
+                        maxWait, meterRegistry)
+                : null;
+        if (!lanesEnabled) {
+            return limiter;
+        }
+        Map<ConnectionPriority, PriorityLaneGate.LaneSettings> lanes = new EnumMap<>(ConnectionPriority.class);
+        lanes.put(ConnectionPriority.INTERACTIVE,
+                new PriorityLaneGate.LaneSettings(interactiveReserved, interactiveWeight));
+        lanes.put(ConnectionPriority.BATCH, new PriorityLaneGate.LaneSettings(batchReserved, batchWeight));
+        return new PriorityLaneGate(laneCapacity, limiter, lanes, laneMaxWait, meterRegistry);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.sbertest.react;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.sbertest.react.repositories.StateRepository;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Warms up the connection pool and the {@code StateMapper} statements once all beans are created,
+ * before the web server starts taking requests.
+ */
+@Service
+@ConditionalOnProperty(prefix = "react.warmup", name = "enabled", havingValue = "true")
+public class ConnectionWarmer implements SmartInitializingSingleton {
+
+    private static final Log logger = LogFactory.getLog(ConnectionWarmer.class);
+
+    @Autowired
+    StateRepository repository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${react.warmup.connections:${spring.datasource.hikari.minimum-idle:10}}")
+    int connections;
+
+    @Value("${react.warmup.statements:selectList,selectCount}")
+    List<String> statements;
+
+    @Value("${react.warmup.timeout:30s}")
+    Duration timeout;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.nanoTime();
+        try {
+            Integer executed = repository.warmUp(connections, statements).block(timeout);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            meterRegistry.timer("react.warmup").record(elapsed);
+            logger.info("Warmed up " + connections + " connections with " + executed + " statements in " +
+                    elapsed.toMillis() + " ms");
+        } catch (RuntimeException ex) {
+            logger.warn("Warm-up failed after " + Duration.ofNanos(System.nanoTime() - start).toMillis() +
+                    " ms, starting cold", ex);
+        }
+    }
+}
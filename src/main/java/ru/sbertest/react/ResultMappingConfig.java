@@ -0,0 +1,20 @@
+package ru.sbertest.react;
+
+import org.apache.ibatis.plugin.Interceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.sbertest.react.springbatis.PrecompiledResultMappingInterceptor;
+
+@Configuration
+@ConditionalOnProperty(prefix = "react.precompiled-mapping", name = "enabled", havingValue = "true")
+public class ResultMappingConfig {
+    @Value("${react.precompiled-mapping.entity-package:ru.sbertest.react.entity}")
+    String entityPackage;
+
+    @Bean
+    public Interceptor precompiledResultMappingInterceptor() {
+        return new PrecompiledResultMappingInterceptor(entityPackage);
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.ConnectionAccessGate;
 import org.springframework.jdbc.datasource.MyBatisReactiveTransactionManager;
 import org.springframework.transaction.ReactiveTransactionManager;
 import ru.sbertest.react.springbatis.SpringReactiveTransactionFactory;
@@ -16,9 +17,14 @@ public class TransactionConfig {
     @Autowired
     DataSource dataSource;
 
+    @Autowired(required = false)
+    ConnectionAccessGate accessGate;
+
     @Bean
     public ReactiveTransactionManager reactiveTransactionManager() {
-        return new MyBatisReactiveTransactionManager(dataSource);
+        MyBatisReactiveTransactionManager transactionManager = new MyBatisReactiveTransactionManager(dataSource);
+        transactionManager.setAccessGate(accessGate);
+        return transactionManager;
     }
 
     @Bean
@@ -0,0 +1,45 @@
+package ru.sbertest.react;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import ru.sbertest.react.entity.State;
+import ru.sbertest.react.repositories.StateRepository;
+import ru.sbertest.react.springbatis.WriteBehindBuffer;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "react.write-behind", name = "enabled", havingValue = "true")
+public class WriteBehindConfig {
+    @Autowired
+    StateRepository repository;
+
+    @Autowired
+    ReactiveTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${react.write-behind.capacity:10000}")
+    int capacity;
+
+    @Value("${react.write-behind.flush-size:1000}")
+    int flushSize;
+
+    @Value("${react.write-behind.flush-interval:100ms}")
+    Duration flushInterval;
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public WriteBehindBuffer<Long, State> stateWriteBehind() {
+        TransactionalOperator operator = TransactionalOperator.create(transactionManager);
+        return new WriteBehindBuffer<>("states", State::getId,
+                states -> repository.updateBatchById(states).as(operator::transactional),
+                capacity, flushSize, flushInterval, meterRegistry);
+    }
+}
@@ -0,0 +1,120 @@
+package ru.sbertest.react.entity;
+
+import ru.sbertest.react.springbatis.ColumnarBatch;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.BitSet;
+
+/**
+ * Columnar view of up to {@link #capacity()} rows of {@code states}. Nullable columns keep a bitmap
+ * of the rows where the value is {@code null}; the primitive value of such rows is {@code 0}.
+ */
+public class StateBatch implements ColumnarBatch {
+
+    private final long[] ids;
+
+    private final long[] prevStateIds;
+
+    private final long[] nextStateIds;
+
+    private final int[] states;
+
+    private final BitSet prevStateIdNulls;
+
+    private final BitSet nextStateIdNulls;
+
+    private final BitSet stateNulls;
+
+    private int size;
+
+    private int idColumn;
+
+    private int prevStateIdColumn;
+
+    private int nextStateIdColumn;
+
+    private int stateColumn;
+
+    public StateBatch(int capacity) {
+        this.ids = new long[capacity];
+        this.prevStateIds = new long[capacity];
+        this.nextStateIds = new long[capacity];
+        this.states = new int[capacity];
+        this.prevStateIdNulls = new BitSet(capacity);
+        this.nextStateIdNulls = new BitSet(capacity);
+        this.stateNulls = new BitSet(capacity);
+    }
+
+    @Override
+    public int capacity() {
+        return ids.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        prevStateIdNulls.clear();
+        nextStateIdNulls.clear();
+        stateNulls.clear();
+    }
+
+    @Override
+    public void bind(ResultSet resultSet) throws SQLException {
+        idColumn = resultSet.findColumn("id");
+        prevStateIdColumn = resultSet.findColumn("prev_state_id");
+        nextStateIdColumn = resultSet.findColumn("next_state_id");
+        stateColumn = resultSet.findColumn("state");
+    }
+
+    @Override
+    public void readRow(ResultSet resultSet) throws SQLException {
+        int row = size++;
+        ids[row] = resultSet.getLong(idColumn);
+        prevStateIds[row] = resultSet.getLong(prevStateIdColumn);
+        if (resultSet.wasNull()) {
+            prevStateIdNulls.set(row);
+        }
+        nextStateIds[row] = resultSet.getLong(nextStateIdColumn);
+        if (resultSet.wasNull()) {
+            nextStateIdNulls.set(row);
+        }
+        states[row] = resultSet.getInt(stateColumn);
+        if (resultSet.wasNull()) {
+            stateNulls.set(row);
+        }
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public long getPrevStateId(int row) {
+        return prevStateIds[row];
+    }
+
+    public boolean isPrevStateIdNull(int row) {
+        return prevStateIdNulls.get(row);
+    }
+
+    public long getNextStateId(int row) {
+        return nextStateIds[row];
+    }
+
+    public boolean isNextStateIdNull(int row) {
+        return nextStateIdNulls.get(row);
+    }
+
+    public int getState(int row) {
+        return states[row];
+    }
+
+    public boolean isStateNull(int row) {
+        return stateNulls.get(row);
+    }
+}
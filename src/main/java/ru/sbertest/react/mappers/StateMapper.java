@@ -1,8 +1,30 @@
 package ru.sbertest.react.mappers;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectProvider;
 import ru.sbertest.react.entity.State;
 
+import java.util.List;
+import java.util.Map;
+
 public interface StateMapper extends BaseMapper<State> {
 
+    @Select("<script>" +
+            "WITH RECURSIVE chain (id, prev_state_id, next_state_id, state, depth) AS (" +
+            " SELECT id, prev_state_id, next_state_id, state, 1 AS depth FROM states WHERE id = #{startId}" +
+            " UNION ALL" +
+            " SELECT s.id, s.prev_state_id, s.next_state_id, s.state, c.depth + 1 FROM states s JOIN chain c ON s.id =" +
+            " <choose><when test='forward'>c.next_state_id</when><otherwise>c.prev_state_id</otherwise></choose>" +
+            " WHERE c.depth &lt; #{maxDepth}" +
+            ") SELECT id, prev_state_id, next_state_id, state FROM chain ORDER BY depth" +
+            "</script>")
+    List<State> selectChain(@Param("startId") Long startId, @Param("forward") boolean forward,
+                            @Param("maxDepth") int maxDepth);
+
+    @SelectProvider(type = StateSqlProvider.class, method = "selectChainHops")
+    Map<String, Object> selectChainHops(@Param("startId") Long startId, @Param("forward") boolean forward,
+                                        @Param("hops") int hops);
+
 }
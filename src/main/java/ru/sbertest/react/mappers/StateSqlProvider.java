@@ -0,0 +1,33 @@
+package ru.sbertest.react.mappers;
+
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * SQL for {@link StateMapper} statements whose shape depends on their parameters.
+ */
+public class StateSqlProvider {
+
+    /**
+     * Up to {@code hops} states of a chain as one row: the start state self-joined {@code hops - 1} times along
+     * the next (or previous) link. Columns of hop {@code n} are {@code idN}, {@code prevN}, {@code nextN} and
+     * {@code stateN}; they are null past the end of the chain.
+     */
+    public static String selectChainHops(@Param("hops") int hops, @Param("forward") boolean forward) {
+        String link = forward ? "next_state_id" : "prev_state_id";
+        StringBuilder columns = new StringBuilder();
+        StringBuilder joins = new StringBuilder();
+        for (int hop = 1; hop <= hops; hop++) {
+            String s = "s" + hop;
+            if (hop > 1) {
+                columns.append(", ");
+                joins.append(" LEFT JOIN states ").append(s).append(" ON ").append(s).append(".id = s")
+                        .append(hop - 1).append('.').append(link);
+            }
+            columns.append(s).append(".id AS \"id").append(hop).append("\", ")
+                    .append(s).append(".prev_state_id AS \"prev").append(hop).append("\", ")
+                    .append(s).append(".next_state_id AS \"next").append(hop).append("\", ")
+                    .append(s).append(".state AS \"state").append(hop).append('"');
+        }
+        return "SELECT " + columns + " FROM states s1" + joins + " WHERE s1.id = #{startId}";
+    }
+}
@@ -4,11 +4,19 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import org.apache.ibatis.binding.MapperMethod;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.sbertest.react.entity.State;
+import ru.sbertest.react.entity.StateBatch;
 import ru.sbertest.react.springbatis.BaseDao;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Repository
@@ -16,28 +24,152 @@ public class StateRepository extends BaseDao  {
 
     private static final String MAPPER_CLASS = "ru.sbertest.react.mappers.StateMapper.";
 
+    @Value("${react.scan.page-size:1000}")
+    int scanPageSize;
+
+    @Value("${react.scan.prefetch:1}")
+    int scanPrefetch;
+
+    @Value("${react.chain.recursive-cte:true}")
+    boolean chainRecursiveCte;
+
+    @Value("${react.chain.hops-per-query:16}")
+    int chainHopsPerQuery;
+
+    public enum ChainDirection { PREV, NEXT }
+
     public StateRepository(SqlSessionFactory sqlSessionFactory) {
         super(sqlSessionFactory);
     }
 
     public Mono<Integer> deleteByState(Integer stateFilter) {
+        Map<String, Object> param = new MapperMethod.ParamMap<>();
+        QueryWrapper<State> wrapper = Wrappers.<State>query().eq("state", stateFilter);
+        param.put("ew",wrapper);
+        param.put("param1",wrapper);
+        return this.write(MAPPER_CLASS+"delete",param);
+    }
+
+    public Mono<Integer> updateBatchById(Collection<State> states) {
+        return this.applyBatch((session) -> {
+            for (State state : states) {
+                Map<String, Object> param = new MapperMethod.ParamMap<>();
+                param.put("et",state);
+                param.put("param1",state);
+                session.update(MAPPER_CLASS+"updateById",param);
+            }
+        }).map(results -> results.stream()
+                .flatMapToInt(result -> Arrays.stream(result.getUpdateCounts()))
+                .map(count -> Math.max(count, 0))
+                .sum());
+    }
+
+    public Mono<State> selectByState(Integer stateFilter) {
         return this.apply((session) -> {
             Map<String, Object> param = new MapperMethod.ParamMap<>();
             QueryWrapper<State> wrapper = Wrappers.<State>query().eq("state", stateFilter);
             param.put("ew",wrapper);
             param.put("param1",wrapper);
-            return session.delete(MAPPER_CLASS+"delete",param);
+            return session.selectOne(MAPPER_CLASS+"selectList",param);
         });
     }
 
-    public Mono<State> selectByState(Integer stateFilter) {
-        return this.apply((session) -> {
+    /**
+     * Reads states in columnar chunks of {@code chunkSize} rows; {@code null} filter reads the whole table.
+     * The emitted batch is reused for the next chunk.
+     */
+    public Flux<StateBatch> selectColumnsByState(Integer stateFilter, int chunkSize) {
+        Map<String, Object> param = new MapperMethod.ParamMap<>();
+        QueryWrapper<State> wrapper = Wrappers.<State>query().eq(stateFilter != null, "state", stateFilter);
+        param.put("ew",wrapper);
+        param.put("param1",wrapper);
+        return this.applyColumnar(MAPPER_CLASS+"selectList", param, () -> new StateBatch(chunkSize));
+    }
+
+    public Flux<State> scanAll() {
+        return scanAll(scanPageSize, scanPrefetch);
+    }
+
+    public Flux<State> scanAll(int pageSize, int prefetch) {
+        return this.<State, Long>keysetScan((session, lastId) -> {
             Map<String, Object> param = new MapperMethod.ParamMap<>();
-            QueryWrapper<State> wrapper = Wrappers.<State>query().eq("state", stateFilter);
+            QueryWrapper<State> wrapper = Wrappers.<State>query()
+                    .gt(lastId != null, "id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + pageSize);
             param.put("ew",wrapper);
             param.put("param1",wrapper);
-            return session.selectOne(MAPPER_CLASS+"selectList",param);
+            return session.selectList(MAPPER_CLASS+"selectList",param);
+        }, State::getId, pageSize, prefetch);
+    }
+
+    public Flux<State> selectChain(Long startId, ChainDirection direction, int maxDepth) {
+        Assert.isTrue(maxDepth > 0, "Max depth must be positive");
+        if (!chainRecursiveCte) {
+            return selectChainByHops(startId, direction, maxDepth);
+        }
+        return this.<State>applyMany((session, sink) -> {
+            Map<String, Object> param = new MapperMethod.ParamMap<>();
+            param.put("startId", startId);
+            param.put("forward", direction == ChainDirection.NEXT);
+            param.put("maxDepth", maxDepth);
+            session.select(MAPPER_CLASS+"selectChain", param, context -> {
+                sink.next((State) context.getResultObject());
+                if (sink.isCancelled()) {
+                    context.stop();
+                }
+            });
+        });
+    }
+
+    /**
+     * Follows the chain {@code chainHopsPerQuery} states per round trip, see {@code StateSqlProvider#selectChainHops}.
+     */
+    private Flux<State> selectChainByHops(Long startId, ChainDirection direction, int maxDepth) {
+        boolean forward = direction == ChainDirection.NEXT;
+        return this.<State>applyMany((session, sink) -> {
+            Long id = startId;
+            int depth = 0;
+            while (id != null && depth < maxDepth && !sink.isCancelled()) {
+                Map<String, Object> param = new MapperMethod.ParamMap<>();
+                param.put("startId", id);
+                param.put("forward", forward);
+                param.put("hops", Math.min(chainHopsPerQuery, maxDepth - depth));
+                Map<String, Object> row = session.selectOne(MAPPER_CLASS+"selectChainHops", param);
+                id = null;
+                for (int hop = 1; row != null && row.get("id" + hop) != null; hop++) {
+                    State state = new State()
+                            .setId(longValue(row.get("id" + hop)))
+                            .setPrevStateId(longValue(row.get("prev" + hop)))
+                            .setNextStateId(longValue(row.get("next" + hop)))
+                            .setState(row.get("state" + hop) == null ? null
+                                    : ((Number) row.get("state" + hop)).intValue());
+                    sink.next(state);
+                    depth++;
+                    id = forward ? state.getNextStateId() : state.getPrevStateId();
+                }
+            }
         });
     }
 
-}
\ No newline at end of file
+    private static Long longValue(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    /**
+     * Warms up {@code connections} connections with the given {@code StateMapper} statements. The statements
+     * must take a query wrapper; they are run with a condition that matches no rows.
+     */
+    public Mono<Integer> warmUp(int connections, List<String> statements) {
+        Map<String, Object> warmUpStatements = new LinkedHashMap<>();
+        for (String statement : statements) {
+            Map<String, Object> param = new MapperMethod.ParamMap<>();
+            QueryWrapper<State> wrapper = Wrappers.<State>query().eq("state", 0).apply("1 = 0");
+            param.put("ew",wrapper);
+            param.put("param1",wrapper);
+            warmUpStatements.put(MAPPER_CLASS+statement, param);
+        }
+        return this.warmUp(connections, warmUpStatements);
+    }
+
+}
@@ -0,0 +1,226 @@
+package ru.sbertest.react.springbatis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.datasource.ConnectionAccessGate;
+import org.springframework.jdbc.datasource.ConnectionAccessRejectedException;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Concurrency limit that follows database latency, in the spirit of the gradient algorithm: the ratio
+ * between the long-term and the recent round trip time shrinks the limit when latency grows and lets it
+ * grow by about {@code sqrt(limit)} while latency stays flat. Work above the limit waits in a bounded
+ * queue for at most {@code maxWait}; when the queue is full or the wait is over it is rejected with
+ * {@link ConnectionAccessRejectedException}.
+ */
+public class AdaptiveConcurrencyLimiter implements ConnectionAccessGate {
+
+    private static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final int SHORT_WINDOW = 10;
+
+    private static final int LONG_WINDOW = 600;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final int maxQueue;
+
+    private final Duration maxWait;
+
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    private final Timer latency;
+
+    private final Counter rejectedQueueFull;
+
+    private final Counter rejectedTimeout;
+
+    private double limit;
+
+    private double shortRtt;
+
+    private double longRtt;
+
+    private int inflight;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, Duration maxWait,
+                                      MeterRegistry meterRegistry) {
+        Assert.isTrue(minLimit > 0 && minLimit <= initialLimit && initialLimit <= maxLimit,
+                "Limits must satisfy 0 < min <= initial <= max");
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWait = maxWait;
+        this.latency = meterRegistry.timer("react.db.limiter.latency");
+        this.rejectedQueueFull = meterRegistry.counter("react.db.limiter.rejected", "reason", "queue-full");
+        this.rejectedTimeout = meterRegistry.counter("react.db.limiter.rejected", "reason", "timeout");
+        meterRegistry.gauge("react.db.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit);
+        meterRegistry.gauge("react.db.limiter.inflight", this, AdaptiveConcurrencyLimiter::getInflight);
+        meterRegistry.gauge("react.db.limiter.queued", this, AdaptiveConcurrencyLimiter::getQueued);
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    @Override
+    public Mono<Permit> acquire(ContextView context, @Nullable TransactionDefinition definition) {
+        return Mono.create(sink -> {
+            Waiter waiter = null;
+            boolean granted = false;
+            synchronized (this) {
+                if (inflight < (int) limit) {
+                    inflight++;
+                    granted = true;
+                } else if (waiters.size() < maxQueue) {
+                    waiter = new Waiter(sink);
+                    waiters.add(waiter);
+                }
+            }
+            if (granted) {
+                sink.success(new LimiterPermit());
+                return;
+            }
+            if (waiter == null) {
+                rejectedQueueFull.increment();
+                sink.error(new ConnectionAccessRejectedException("Database concurrency limit of " + getLimit() +
+                        " reached and " + maxQueue + " requests are already waiting"));
+                return;
+            }
+            Waiter queued = waiter;
+            Disposable timer = Schedulers.parallel().schedule(() -> expire(queued), maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            sink.onDispose(timer);
+            sink.onCancel(() -> cancel(queued));
+        });
+    }
+
+    /**
+     * Takes a permit without checking the limit or queuing, for a gate that has already admitted the work
+     * against {@link #getLimit()}. Releasing it still feeds the latency into the limit.
+     */
+    public Permit acquireAdmitted() {
+        synchronized (this) {
+            inflight++;
+        }
+        return new LimiterPermit();
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiters.remove(waiter)) {
+                return;
+            }
+        }
+        rejectedTimeout.increment();
+        waiter.sink.error(new ConnectionAccessRejectedException("Timed out after " + maxWait.toMillis() +
+                " ms waiting under the database concurrency limit of " + getLimit()));
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            if (waiters.remove(waiter)) {
+                return;
+            }
+        }
+        // Granted concurrently with the cancellation: nobody will use that permit.
+        if (waiter.permit != null) {
+            waiter.permit.release(false);
+        }
+    }
+
+    private void release(long rttNanos, boolean successful) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            if (successful) {
+                updateLimit(rttNanos);
+            }
+            inflight--;
+            while (inflight < (int) limit && !waiters.isEmpty()) {
+                Waiter waiter = waiters.poll();
+                inflight++;
+                waiter.permit = new LimiterPermit();
+                granted.add(waiter);
+            }
+        }
+        for (Waiter waiter : granted) {
+            GrantTrampoline.run(() -> waiter.sink.success(waiter.permit));
+        }
+    }
+
+    private void updateLimit(long rttNanos) {
+        double rtt = rttNanos;
+        if (longRtt == 0) {
+            shortRtt = rtt;
+            longRtt = rtt;
+        } else {
+            shortRtt += (rtt - shortRtt) / SHORT_WINDOW;
+            longRtt += (rtt - longRtt) / LONG_WINDOW;
+        }
+        if (longRtt / shortRtt > 2) {
+            // Latency dropped well below the long term average: let the average catch up faster.
+            longRtt *= 0.95;
+        }
+        if (inflight < limit / 2) {
+            // Not using the current limit, so latency says nothing about whether it is too high.
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    private class LimiterPermit implements Permit {
+
+        private final long start = System.nanoTime();
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void release(boolean successful) {
+            if (released.compareAndSet(false, true)) {
+                long rtt = System.nanoTime() - start;
+                latency.record(rtt, TimeUnit.NANOSECONDS);
+                AdaptiveConcurrencyLimiter.this.release(rtt, successful);
+            }
+        }
+    }
+
+    private static class Waiter {
+
+        private final MonoSink<Permit> sink;
+
+        private volatile Permit permit;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+}
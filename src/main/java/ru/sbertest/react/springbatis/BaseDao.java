@@ -1,20 +1,47 @@
 package ru.sbertest.react.springbatis;
 
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.ConnectionAccessGate;
 import org.springframework.jdbc.datasource.ReactiveDataSourceUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Component
 public abstract class BaseDao {
     @Autowired
     DataSource dataSource;
 
+    @Autowired(required = false)
+    ConnectionAccessGate accessGate;
+
     private final SqlSessionFactory sqlSessionFactory;
 
     public BaseDao(SqlSessionFactory sqlSessionFactory) {
@@ -22,10 +49,217 @@ public abstract class BaseDao {
     }
 
     protected <R> Mono<R> apply(Function<SqlSession, R> function) {
-        return ReactiveDataSourceUtils.getConnection(dataSource).map(
-                connection -> {
-                    SqlSession session = sqlSessionFactory.openSession(connection);
-                    return function.apply(session);
-                });
+        return withConnection(connection -> Mono.fromCallable(() -> {
+            SqlSession session = sqlSessionFactory.openSession(connection);
+            return function.apply(session);
+        })).singleOrEmpty();
+    }
+
+    /**
+     * Executes an insert, update or delete statement. Within a transaction that defers writes
+     * (see {@link UnitOfWork}) the statement is only recorded and the returned {@code Mono} completes
+     * empty; otherwise it emits the number of affected rows.
+     */
+    protected Mono<Integer> write(String statement, Object parameter) {
+        Mono<Integer> immediate = apply(session -> session.update(statement, parameter));
+        return Mono.deferContextual(context -> {
+            if (!UnitOfWork.isEnabled(context)) {
+                return immediate;
+            }
+            return unitOfWork(true)
+                    .map(unitOfWork -> {
+                        unitOfWork.record(statement, parameter);
+                        return Boolean.TRUE;
+                    })
+                    .defaultIfEmpty(Boolean.FALSE)
+                    .flatMap(deferred -> deferred ? Mono.<Integer>empty() : immediate);
+        });
+    }
+
+    private Mono<UnitOfWork> unitOfWork(boolean create) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .flatMap(sm -> {
+                    UnitOfWork unitOfWork = (UnitOfWork) sm.getResource(sqlSessionFactory);
+                    if (unitOfWork == null && create && sm.isSynchronizationActive()) {
+                        unitOfWork = new UnitOfWork(sqlSessionFactory, sqlSessionFactory.getConfiguration(),
+                                this::applyBatch);
+                        sm.bindResource(sqlSessionFactory, unitOfWork);
+                        sm.registerSynchronization(unitOfWork);
+                    }
+                    return Mono.justOrEmpty(unitOfWork);
+                })
+                .onErrorResume(NoTransactionException.class, ex -> Mono.empty());
+    }
+
+    /**
+     * Runs the statements issued by {@code function} through a batch executor and sends them to the
+     * database as one JDBC batch.
+     */
+    protected Mono<List<BatchResult>> applyBatch(Consumer<SqlSession> function) {
+        return withConnection(connection -> Mono.fromCallable(() -> {
+            SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, connection);
+            function.accept(session);
+            return session.flushStatements();
+        })).singleOrEmpty();
+    }
+
+    /**
+     * Runs {@code function} on a single connection and streams whatever it pushes into the sink, so rows
+     * fetched through a {@link org.apache.ibatis.session.ResultHandler} reach the subscriber as soon as
+     * they are mapped. The function should stop reading once {@link FluxSink#isCancelled()} is set.
+     */
+    protected <T> Flux<T> applyMany(BiConsumer<SqlSession, FluxSink<T>> function) {
+        return withConnection(connection -> Flux.<T>create(sink -> {
+            SqlSession session = sqlSessionFactory.openSession(connection);
+            try {
+                function.accept(session, sink);
+                sink.complete();
+            } catch (RuntimeException ex) {
+                sink.error(ex);
+            }
+        }));
+    }
+
+    /**
+     * Runs a mapped select statement and reads its rows straight from the JDBC result set into a
+     * {@link ColumnarBatch}, bypassing MyBatis result mapping. Every chunk is the same batch instance
+     * refilled on demand, so a chunk is only valid until the next one is requested: consume it in place
+     * (e.g. in {@code doOnNext} or {@code reduce}) and do not hand it to operators that prefetch.
+     */
+    protected <B extends ColumnarBatch> Flux<B> applyColumnar(String statement, Object parameter,
+                                                              Supplier<B> batchFactory) {
+        return withConnection(connection -> {
+            B batch = batchFactory.get();
+            return Flux.using(() -> prepareStatement(connection, statement, parameter, batch.capacity()),
+                    ps -> Flux.<B, ResultSet>generate(() -> {
+                        ResultSet resultSet = ps.executeQuery();
+                        batch.bind(resultSet);
+                        return resultSet;
+                    }, (resultSet, sink) -> {
+                        batch.clear();
+                        try {
+                            while (batch.size() < batch.capacity() && resultSet.next()) {
+                                batch.readRow(resultSet);
+                            }
+                        } catch (SQLException ex) {
+                            sink.error(ex);
+                            return resultSet;
+                        }
+                        if (batch.size() > 0) {
+                            sink.next(batch);
+                        }
+                        if (batch.size() < batch.capacity()) {
+                            sink.complete();
+                        }
+                        return resultSet;
+                    }),
+                    BaseDao::closeStatement);
+        });
+    }
+
+    /**
+     * Opens {@code connections} connections at the same time, runs every select statement of
+     * {@code statements} (statement id to parameter) on each of them and returns them to the pool,
+     * so that the pool, the driver and MyBatis have done their first-use work before real traffic.
+     * Emits the number of statements executed.
+     */
+    protected Mono<Integer> warmUp(int connections, Map<String, Object> statements) {
+        Configuration configuration = sqlSessionFactory.getConfiguration();
+        statements.keySet().forEach(statement -> Assert.isTrue(
+                configuration.getMappedStatement(statement).getSqlCommandType() == SqlCommandType.SELECT,
+                () -> "Only select statements can be used for warm-up: " + statement));
+        return Mono.usingWhen(
+                Flux.range(0, connections)
+                        .flatMap(i -> Mono.fromCallable(dataSource::getConnection)
+                                .subscribeOn(Schedulers.boundedElastic()), connections)
+                        .doOnDiscard(Connection.class, BaseDao::closeConnection)
+                        .collectList(),
+                opened -> Flux.fromIterable(opened)
+                        .flatMap(connection -> Mono.fromCallable(() -> {
+                            SqlSession session = sqlSessionFactory.openSession(connection);
+                            statements.forEach(session::selectList);
+                            return statements.size();
+                        }).subscribeOn(Schedulers.boundedElastic()))
+                        .reduce(0, Integer::sum),
+                opened -> Mono.fromRunnable(() -> opened.forEach(BaseDao::closeConnection)));
+    }
+
+    private static void closeConnection(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // returned to the pool or already broken, either way nothing to do
+        }
+    }
+
+    /**
+     * Borrows a connection for {@code work} and returns it afterwards. Work outside of a transaction goes
+     * through the {@link ConnectionAccessGate}, if there is one; inside a transaction the gate was passed
+     * when the transaction started, and writes deferred by a {@link UnitOfWork} are flushed first.
+     */
+    private <R> Flux<R> withConnection(Function<Connection, Publisher<R>> work) {
+        Flux<R> flux = Flux.usingWhen(ReactiveDataSourceUtils.getConnection(dataSource), work,
+                connection -> ReactiveDataSourceUtils.doReleaseConnection(connection, dataSource));
+        return ReactiveDataSourceUtils.isTransactionBound(dataSource).flatMapMany(transactional -> {
+            if (transactional) {
+                return unitOfWork(false).flatMap(UnitOfWork::flush).thenMany(flux);
+            }
+            return accessGate != null ? accessGate.guard(flux) : flux;
+        });
+    }
+
+    private PreparedStatement prepareStatement(Connection connection, String statement, Object parameter,
+                                               int fetchSize) throws SQLException {
+        Configuration configuration = sqlSessionFactory.getConfiguration();
+        MappedStatement mappedStatement = configuration.getMappedStatement(statement);
+        BoundSql boundSql = mappedStatement.getBoundSql(parameter);
+        PreparedStatement ps = connection.prepareStatement(boundSql.getSql(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            ps.setFetchSize(fetchSize);
+            configuration.newParameterHandler(mappedStatement, parameter, boundSql).setParameters(ps);
+        } catch (SQLException | RuntimeException ex) {
+            closeStatement(ps);
+            throw ex;
+        }
+        return ps;
+    }
+
+    private static void closeStatement(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignored) {
+            // the connection is released right after, nothing else to clean up
+        }
+    }
+
+    /**
+     * Scans a table page by page using keyset pagination: every page is requested with the key of the
+     * last row of the previous page ({@code null} for the first one) and the scan ends on a short page.
+     * Outside of a transaction every page borrows its own connection only while it is read, and pages are
+     * loaded ahead of the consumer on {@link Schedulers#boundedElastic()}, up to {@code prefetch} pages, so a
+     * slow consumer holds rows but no connection. Inside a transaction
+     * all pages are read through the transactional connection one after another.
+     */
+    protected <T, K> Flux<T> keysetScan(BiFunction<SqlSession, K, List<T>> pageQuery, Function<T, K> keyExtractor,
+                                        int pageSize, int prefetch) {
+        Assert.isTrue(pageSize > 0, "Page size must be positive");
+        Assert.isTrue(prefetch > 0, "Prefetch must be positive");
+        return ReactiveDataSourceUtils.isTransactionBound(dataSource).flatMapMany(transactional -> {
+            Function<K, Mono<List<T>>> pageLoader = after -> {
+                Mono<List<T>> page = apply(session -> pageQuery.apply(session, after));
+                if (transactional) {
+                    return page;
+                }
+                // Load the page right away, independent of demand, so that its connection and permit
+                // go back as soon as the rows are read and only the list waits for the consumer.
+                return Mono.deferContextual(context -> Mono.fromFuture(
+                        page.subscribeOn(Schedulers.boundedElastic()).contextWrite(context).toFuture()));
+            };
+            return pageLoader.apply(null)
+                    .expand(page -> page.size() < pageSize ? Mono.empty()
+                            : pageLoader.apply(keyExtractor.apply(page.get(page.size() - 1))))
+                    .concatMapIterable(page -> page, prefetch);
+        });
     }
 }
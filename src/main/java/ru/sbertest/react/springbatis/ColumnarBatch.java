@@ -0,0 +1,27 @@
+package ru.sbertest.react.springbatis;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Fixed-capacity set of rows stored column by column in primitive arrays. A batch is filled and
+ * reused by {@link BaseDao#applyColumnar}, so nothing is allocated per row.
+ */
+public interface ColumnarBatch {
+
+    int capacity();
+
+    int size();
+
+    void clear();
+
+    /**
+     * Called once per result set, before the first row is read, to resolve column positions.
+     */
+    void bind(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Appends the current row of the result set.
+     */
+    void readRow(ResultSet resultSet) throws SQLException;
+}
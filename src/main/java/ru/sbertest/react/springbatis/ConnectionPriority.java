@@ -0,0 +1,42 @@
+package ru.sbertest.react.springbatis;
+
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Locale;
+
+/**
+ * Traffic class of database work. It is taken from the subscriber context
+ * ({@code .contextWrite(ConnectionPriority.BATCH.asContext())}) or from a transaction label
+ * ({@code @Transactional(label = "priority:batch")}); work without either is {@link #INTERACTIVE}.
+ */
+public enum ConnectionPriority {
+
+    INTERACTIVE,
+
+    BATCH;
+
+    private static final String LABEL_PREFIX = "priority:";
+
+    public Context asContext() {
+        return Context.of(ConnectionPriority.class, this);
+    }
+
+    public static ConnectionPriority resolve(ContextView context, @Nullable TransactionDefinition definition) {
+        ConnectionPriority priority = context.getOrDefault(ConnectionPriority.class, null);
+        if (priority != null) {
+            return priority;
+        }
+        if (definition instanceof TransactionAttribute) {
+            for (String label : ((TransactionAttribute) definition).getLabels()) {
+                if (label.startsWith(LABEL_PREFIX)) {
+                    return valueOf(label.substring(LABEL_PREFIX.length()).toUpperCase(Locale.ENGLISH));
+                }
+            }
+        }
+        return INTERACTIVE;
+    }
+}
@@ -0,0 +1,168 @@
+package ru.sbertest.react.springbatis;
+
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeHandler;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Maps rows to an entity without reflection: the constructor and the setters are bound once through
+ * {@link LambdaMetafactory}, and for every result set shape the columns are resolved once to a plan of
+ * column index, type handler and setter. Column names and {@code NULL} values are handled the way MyBatis
+ * auto mapping does, including {@code callSettersOnNulls} and {@code returnInstanceForEmptyRow}.
+ */
+class EntityRowMapper<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<T> type;
+
+    private final Supplier<T> constructor;
+
+    private final Map<String, Property> properties = new HashMap<>();
+
+    private final Map<String, ColumnPlan[]> plans = new ConcurrentHashMap<>();
+
+    EntityRowMapper(Class<T> type) {
+        this.type = type;
+        this.constructor = bindConstructor(type);
+        for (Method method : type.getMethods()) {
+            if (method.getName().length() > 3 && method.getName().startsWith("set") &&
+                    method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers())) {
+                String name = method.getName().substring(3).toLowerCase(Locale.ENGLISH);
+                properties.putIfAbsent(name, new Property(method.getParameterTypes()[0], bindSetter(type, method)));
+            }
+        }
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    List<Object> mapRows(ResultSet resultSet, Configuration configuration) throws SQLException {
+        ColumnPlan[] plan = plan(resultSet.getMetaData(), configuration);
+        boolean callSettersOnNulls = configuration.isCallSettersOnNulls();
+        boolean returnInstanceForEmptyRow = configuration.isReturnInstanceForEmptyRow();
+        List<Object> rows = new ArrayList<>();
+        while (resultSet.next()) {
+            T row = constructor.get();
+            boolean foundValues = false;
+            for (ColumnPlan column : plan) {
+                Object value = column.typeHandler.getResult(resultSet, column.index);
+                if (value != null) {
+                    foundValues = true;
+                    column.setter.accept(row, value);
+                } else if (callSettersOnNulls && !column.primitive) {
+                    column.setter.accept(row, null);
+                }
+            }
+            rows.add(foundValues || returnInstanceForEmptyRow ? row : null);
+        }
+        return rows;
+    }
+
+    private ColumnPlan[] plan(ResultSetMetaData metaData, Configuration configuration) throws SQLException {
+        int count = metaData.getColumnCount();
+        String[] labels = new String[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+        }
+        return plans.computeIfAbsent(String.join(",", labels), shape -> {
+            List<ColumnPlan> plan = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String name = labels[i];
+                if (configuration.isMapUnderscoreToCamelCase()) {
+                    name = name.replace("_", "");
+                }
+                Property property = properties.get(name.toLowerCase(Locale.ENGLISH));
+                if (property == null) {
+                    continue;
+                }
+                TypeHandler<?> typeHandler = configuration.getTypeHandlerRegistry().getTypeHandler(property.type);
+                if (typeHandler != null) {
+                    plan.add(new ColumnPlan(i + 1, typeHandler, property.setter, property.type.isPrimitive()));
+                }
+            }
+            return plan.toArray(new ColumnPlan[0]);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> bindConstructor(Class<T> type) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(type, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(type));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Cannot bind no-arg constructor of " + type.getName(), ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> bindSetter(Class<?> type, Method method) {
+        try {
+            MethodHandle handle = LOOKUP.unreflect(method);
+            Class<?> valueType = ClassUtils.resolvePrimitiveIfNecessary(method.getParameterTypes()[0]);
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(void.class, type, valueType));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Cannot bind setter " + method, ex);
+        }
+    }
+
+    private static class Property {
+
+        private final Class<?> type;
+
+        private final BiConsumer<Object, Object> setter;
+
+        Property(Class<?> type, BiConsumer<Object, Object> setter) {
+            this.type = type;
+            this.setter = setter;
+        }
+    }
+
+    private static class ColumnPlan {
+
+        private final int index;
+
+        private final TypeHandler<?> typeHandler;
+
+        private final BiConsumer<Object, Object> setter;
+
+        private final boolean primitive;
+
+        ColumnPlan(int index, TypeHandler<?> typeHandler, BiConsumer<Object, Object> setter, boolean primitive) {
+            this.index = index;
+            this.typeHandler = typeHandler;
+            this.setter = setter;
+            this.primitive = primitive;
+        }
+    }
+}
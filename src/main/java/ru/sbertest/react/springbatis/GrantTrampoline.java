@@ -0,0 +1,47 @@
+package ru.sbertest.react.springbatis;
+
+import java.util.ArrayDeque;
+
+/**
+ * Hands permits to waiters without recursion. Granting a permit may run the waiter's work on the same
+ * thread, and when that work releases its permit right away the next grant would nest inside the previous
+ * one. Grants issued while another one is running on the thread are queued and run by the outermost call
+ * instead, so draining a long queue does not grow the stack.
+ */
+final class GrantTrampoline {
+
+    private static final ThreadLocal<ArrayDeque<Runnable>> PENDING = new ThreadLocal<>();
+
+    private GrantTrampoline() {
+    }
+
+    static void run(Runnable grant) {
+        ArrayDeque<Runnable> pending = PENDING.get();
+        if (pending != null) {
+            pending.add(grant);
+            return;
+        }
+        pending = new ArrayDeque<>();
+        PENDING.set(pending);
+        RuntimeException failure = null;
+        try {
+            for (Runnable next = grant; next != null; next = pending.poll()) {
+                try {
+                    next.run();
+                } catch (RuntimeException ex) {
+                    // keep granting: the remaining waiters already hold their permits
+                    if (failure == null) {
+                        failure = ex;
+                    } else {
+                        failure.addSuppressed(ex);
+                    }
+                }
+            }
+        } finally {
+            PENDING.remove();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.sbertest.react.springbatis;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.core.toolkit.PluginUtils;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.util.ClassUtils;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces reflective MyBatis result mapping for {@link TableName} entities found under the given
+ * package. Only plain auto-mapped selects into such an entity are handled here: statements with explicit
+ * or nested result maps, multiple result sets, row bounds or a custom result handler go to MyBatis as usual.
+ */
+@Intercepts(@Signature(type = ResultSetHandler.class, method = "handleResultSets", args = {Statement.class}))
+public class PrecompiledResultMappingInterceptor implements Interceptor {
+
+    private final Map<Class<?>, EntityRowMapper<?>> mappers = new HashMap<>();
+
+    public PrecompiledResultMappingInterceptor(String entityPackage) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(TableName.class));
+        for (BeanDefinition candidate : scanner.findCandidateComponents(entityPackage)) {
+            Class<?> type = ClassUtils.resolveClassName(candidate.getBeanClassName(), ClassUtils.getDefaultClassLoader());
+            mappers.put(type, new EntityRowMapper<>(type));
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MetaObject handler = SystemMetaObject.forObject(PluginUtils.realTarget(invocation.getTarget()));
+        MappedStatement mappedStatement = (MappedStatement) handler.getValue("mappedStatement");
+        EntityRowMapper<?> mapper = findMapper(mappedStatement);
+        RowBounds rowBounds = (RowBounds) handler.getValue("rowBounds");
+        if (mapper == null || handler.getValue("resultHandler") != null ||
+                rowBounds.getOffset() != RowBounds.NO_ROW_OFFSET || rowBounds.getLimit() != RowBounds.NO_ROW_LIMIT) {
+            return invocation.proceed();
+        }
+        Statement statement = (Statement) invocation.getArgs()[0];
+        ResultSet resultSet = statement.getResultSet();
+        if (resultSet == null) {
+            return invocation.proceed();
+        }
+        try {
+            return mapper.mapRows(resultSet, mappedStatement.getConfiguration());
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private EntityRowMapper<?> findMapper(MappedStatement mappedStatement) {
+        if (mappedStatement.getResultSets() != null || mappedStatement.getResultMaps().size() != 1) {
+            return null;
+        }
+        ResultMap resultMap = mappedStatement.getResultMaps().get(0);
+        if (!resultMap.getResultMappings().isEmpty() || resultMap.hasNestedResultMaps()) {
+            return null;
+        }
+        return mappers.get(resultMap.getType());
+    }
+}
@@ -0,0 +1,287 @@
+package ru.sbertest.react.springbatis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.datasource.ConnectionAccessGate;
+import org.springframework.jdbc.datasource.ConnectionAccessRejectedException;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits {@code capacity} connections between {@link ConnectionPriority} lanes. Every lane has a number of
+ * reserved connections that other lanes cannot take, the rest is shared. When work of several lanes is
+ * waiting, freed connections are handed out in proportion to the lane weights (stride scheduling), and
+ * in arrival order inside a lane. Work that waits longer than {@code maxWait} is rejected with
+ * {@link ConnectionAccessRejectedException}.
+ * <p>
+ * With an {@link AdaptiveConcurrencyLimiter} the lanes share at most the limiter's current limit instead of
+ * the full capacity, and every permit also holds a limiter permit so that the limit keeps following latency.
+ * The limiter's own queue is not used: which work goes first is decided here only.
+ */
+public class PriorityLaneGate implements ConnectionAccessGate {
+
+    private final int capacity;
+
+    @Nullable
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final Duration maxWait;
+
+    private final Map<ConnectionPriority, Lane> lanes = new EnumMap<>(ConnectionPriority.class);
+
+    private int inUse;
+
+    public PriorityLaneGate(int capacity, Map<ConnectionPriority, LaneSettings> settings, Duration maxWait,
+                            MeterRegistry meterRegistry) {
+        this(capacity, null, settings, maxWait, meterRegistry);
+    }
+
+    public PriorityLaneGate(int capacity, @Nullable AdaptiveConcurrencyLimiter limiter,
+                            Map<ConnectionPriority, LaneSettings> settings, Duration maxWait,
+                            MeterRegistry meterRegistry) {
+        int reserved = 0;
+        for (ConnectionPriority priority : ConnectionPriority.values()) {
+            LaneSettings laneSettings = settings.getOrDefault(priority, new LaneSettings(0, 1));
+            Assert.isTrue(laneSettings.weight > 0, "Lane weight must be positive");
+            reserved += laneSettings.reserved;
+            String name = priority.name().toLowerCase(Locale.ENGLISH);
+            Lane lane = new Lane(name, laneSettings, meterRegistry.timer("react.db.lane.wait", "lane", name));
+            lanes.put(priority, lane);
+            meterRegistry.gauge("react.db.lane.in-use", Tags.of("lane", name), lane, this::inUse);
+            meterRegistry.gauge("react.db.lane.pending", Tags.of("lane", name), lane, this::pending);
+        }
+        Assert.isTrue(reserved <= capacity, "Reserved connections exceed the capacity");
+        this.capacity = capacity;
+        this.limiter = limiter;
+        this.maxWait = maxWait;
+    }
+
+    private synchronized int inUse(Lane lane) {
+        return lane.inUse;
+    }
+
+    private synchronized int pending(Lane lane) {
+        return lane.waiters.size();
+    }
+
+    @Override
+    public Mono<Permit> acquire(ContextView context, @Nullable TransactionDefinition definition) {
+        return Mono.create(sink -> {
+            Lane lane = lanes.get(ConnectionPriority.resolve(context, definition));
+            Waiter waiter = new Waiter(lane, sink);
+            boolean granted = false;
+            synchronized (this) {
+                if (lane.waiters.isEmpty() && canTake(lane)) {
+                    grant(waiter);
+                    granted = true;
+                } else {
+                    if (lane.waiters.isEmpty() && hasWaiters()) {
+                        // A lane that was idle must not catch up on the turns it did not use.
+                        lane.pass = Math.max(lane.pass, minActivePass());
+                    }
+                    lane.waiters.add(waiter);
+                }
+            }
+            if (granted) {
+                sink.success(waiter.permit);
+                return;
+            }
+            Disposable timer = Schedulers.parallel().schedule(() -> expire(waiter), maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            sink.onDispose(timer);
+            sink.onCancel(() -> cancel(waiter));
+        });
+    }
+
+    private int capacity() {
+        return limiter != null ? Math.min(capacity, limiter.getLimit()) : capacity;
+    }
+
+    private boolean canTake(Lane lane) {
+        int capacity = capacity();
+        if (inUse >= capacity) {
+            return false;
+        }
+        int heldForOthers = 0;
+        for (Lane other : lanes.values()) {
+            if (other != lane) {
+                heldForOthers += Math.max(0, other.settings.reserved - other.inUse);
+            }
+        }
+        return capacity - inUse - heldForOthers > 0;
+    }
+
+    private boolean hasWaiters() {
+        for (Lane lane : lanes.values()) {
+            if (!lane.waiters.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double minActivePass() {
+        double min = 0;
+        boolean found = false;
+        for (Lane lane : lanes.values()) {
+            if (!lane.waiters.isEmpty() && (!found || lane.pass < min)) {
+                min = lane.pass;
+                found = true;
+            }
+        }
+        return min;
+    }
+
+    private void grant(Waiter waiter) {
+        Lane lane = waiter.lane;
+        lane.inUse++;
+        inUse++;
+        lane.pass += 1.0 / lane.settings.weight;
+        lane.waitTimer.record(System.nanoTime() - waiter.enqueued, TimeUnit.NANOSECONDS);
+        waiter.permit = new LanePermit(lane, limiter != null ? limiter.acquireAdmitted() : null);
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiter.lane.waiters.remove(waiter)) {
+                return;
+            }
+        }
+        waiter.sink.error(new ConnectionAccessRejectedException("Timed out after " + maxWait.toMillis() +
+                " ms waiting for a connection in the " + waiter.lane.name + " lane"));
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            if (waiter.lane.waiters.remove(waiter)) {
+                return;
+            }
+        }
+        // Granted concurrently with the cancellation: nobody will use that permit.
+        if (waiter.permit != null) {
+            waiter.permit.release(false);
+        }
+    }
+
+    private void release(Lane lane) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            lane.inUse--;
+            inUse--;
+            Waiter next;
+            while ((next = nextWaiter()) != null) {
+                next.lane.waiters.poll();
+                grant(next);
+                granted.add(next);
+            }
+        }
+        for (Waiter waiter : granted) {
+            GrantTrampoline.run(() -> waiter.sink.success(waiter.permit));
+        }
+    }
+
+    /**
+     * Head of the waiting lane with the lowest pass among the lanes that may take a connection now.
+     */
+    @Nullable
+    private Waiter nextWaiter() {
+        Lane chosen = null;
+        for (Lane lane : lanes.values()) {
+            if (!lane.waiters.isEmpty() && canTake(lane) && (chosen == null || lane.pass < chosen.pass)) {
+                chosen = lane;
+            }
+        }
+        return chosen != null ? chosen.waiters.peek() : null;
+    }
+
+    public static class LaneSettings {
+
+        private final int reserved;
+
+        private final int weight;
+
+        public LaneSettings(int reserved, int weight) {
+            this.reserved = reserved;
+            this.weight = weight;
+        }
+    }
+
+    private static class Lane {
+
+        private final String name;
+
+        private final LaneSettings settings;
+
+        private final Timer waitTimer;
+
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        private int inUse;
+
+        private double pass;
+
+        Lane(String name, LaneSettings settings, Timer waitTimer) {
+            this.name = name;
+            this.settings = settings;
+            this.waitTimer = waitTimer;
+        }
+    }
+
+    private class LanePermit implements Permit {
+
+        private final Lane lane;
+
+        @Nullable
+        private final Permit limiterPermit;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        LanePermit(Lane lane, @Nullable Permit limiterPermit) {
+            this.lane = lane;
+            this.limiterPermit = limiterPermit;
+        }
+
+        @Override
+        public void release(boolean successful) {
+            if (released.compareAndSet(false, true)) {
+                if (limiterPermit != null) {
+                    // First, so that waiters below are admitted against the updated limit.
+                    limiterPermit.release(successful);
+                }
+                PriorityLaneGate.this.release(lane);
+            }
+        }
+    }
+
+    private static class Waiter {
+
+        private final Lane lane;
+
+        private final MonoSink<Permit> sink;
+
+        private final long enqueued = System.nanoTime();
+
+        private volatile Permit permit;
+
+        Waiter(Lane lane, MonoSink<Permit> sink) {
+            this.lane = lane;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ru.sbertest.react.springbatis;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Writes of one transaction that are held back and sent as a single JDBC batch right before commit.
+ * Enabled per transaction through the subscriber context:
+ * {@code .contextWrite(UnitOfWork.deferWrites())} inside the transactional {@code Mono}.
+ * <p>
+ * A delete that repeats the write right before it (same statement, same SQL and values) is dropped.
+ * Any other database access in the transaction flushes the pending writes first, so reads see them.
+ */
+public class UnitOfWork implements TransactionSynchronization {
+
+    private final Object resourceKey;
+
+    private final Configuration configuration;
+
+    private final Function<Consumer<SqlSession>, Mono<?>> batchRunner;
+
+    private final List<Write> writes = new ArrayList<>();
+
+    UnitOfWork(Object resourceKey, Configuration configuration, Function<Consumer<SqlSession>, Mono<?>> batchRunner) {
+        this.resourceKey = resourceKey;
+        this.configuration = configuration;
+        this.batchRunner = batchRunner;
+    }
+
+    public static Context deferWrites() {
+        return Context.of(UnitOfWork.class, Boolean.TRUE);
+    }
+
+    static boolean isEnabled(ContextView context) {
+        return context.getOrDefault(UnitOfWork.class, Boolean.FALSE);
+    }
+
+    synchronized void record(String statement, Object parameter) {
+        MappedStatement mappedStatement = configuration.getMappedStatement(statement);
+        List<Object> key = mappedStatement.getSqlCommandType() == SqlCommandType.DELETE
+                ? statementKey(mappedStatement, parameter) : null;
+        if (key != null && !writes.isEmpty() && key.equals(writes.get(writes.size() - 1).key)) {
+            return;
+        }
+        writes.add(new Write(statement, parameter, key));
+    }
+
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            List<Write> pending;
+            synchronized (this) {
+                if (writes.isEmpty()) {
+                    return Mono.empty();
+                }
+                pending = new ArrayList<>(writes);
+                writes.clear();
+            }
+            return batchRunner.apply(session -> {
+                for (Write write : pending) {
+                    session.update(write.statement, write.parameter);
+                }
+            }).then();
+        });
+    }
+
+    /**
+     * Steps aside while an inner transaction ({@code REQUIRES_NEW}) runs, so that its database access
+     * neither sees nor flushes the writes held back here; they stay pending until this transaction resumes.
+     */
+    @Override
+    public Mono<Void> suspend() {
+        return unbind();
+    }
+
+    @Override
+    public Mono<Void> resume() {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .doOnNext(sm -> sm.bindResource(resourceKey, this))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> beforeCommit(boolean readOnly) {
+        return flush();
+    }
+
+    @Override
+    public Mono<Void> afterCompletion(int status) {
+        synchronized (this) {
+            writes.clear();
+        }
+        return unbind();
+    }
+
+    private Mono<Void> unbind() {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .doOnNext(sm -> sm.unbindResourceIfPossible(resourceKey))
+                .onErrorResume(ex -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * The SQL of the statement and the values bound to it, resolved the way the parameter handler does.
+     */
+    private List<Object> statementKey(MappedStatement mappedStatement, Object parameter) {
+        BoundSql boundSql = mappedStatement.getBoundSql(parameter);
+        List<Object> key = new ArrayList<>();
+        key.add(mappedStatement.getId());
+        key.add(boundSql.getSql());
+        MetaObject metaObject = parameter == null ? null : configuration.newMetaObject(parameter);
+        for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+            String property = parameterMapping.getProperty();
+            if (boundSql.hasAdditionalParameter(property)) {
+                key.add(boundSql.getAdditionalParameter(property));
+            } else if (parameter == null) {
+                key.add(null);
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+                key.add(parameter);
+            } else {
+                key.add(Objects.requireNonNull(metaObject).getValue(property));
+            }
+        }
+        return key;
+    }
+
+    private static class Write {
+
+        private final String statement;
+
+        private final Object parameter;
+
+        private final List<Object> key;
+
+        Write(String statement, Object parameter, List<Object> key) {
+            this.statement = statement;
+            this.parameter = parameter;
+            this.key = key;
+        }
+    }
+}
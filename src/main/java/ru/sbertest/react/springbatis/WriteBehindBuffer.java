@@ -0,0 +1,218 @@
+package ru.sbertest.react.springbatis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Collects changes of entities in memory and writes them in batches. Only the latest change per key
+ * is kept, so a row updated many times between two flushes is written once. Every submitted change is
+ * acknowledged when the flush that wrote it (or a newer change of the same row) has finished.
+ * <p>
+ * A flush starts when {@code flushSize} keys are pending or every {@code flushInterval}, whichever comes
+ * first. When {@code capacity} keys are pending, new keys wait for the next flush before they are accepted.
+ */
+public class WriteBehindBuffer<K, T> {
+
+    private static final Log logger = LogFactory.getLog(WriteBehindBuffer.class);
+
+    private final Function<T, K> keyExtractor;
+
+    private final Function<List<T>, Mono<?>> writer;
+
+    private final int capacity;
+
+    private final int flushSize;
+
+    private final Duration flushInterval;
+
+    private final ConcurrentHashMap<K, Pending<T>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicReference<Mono<Void>> runningFlush = new AtomicReference<>();
+
+    private final Counter submitted;
+
+    private final Counter coalesced;
+
+    private final Counter failures;
+
+    private final Timer flushTimer;
+
+    private final DistributionSummary flushSizes;
+
+    private Disposable ticker;
+
+    private volatile boolean closed;
+
+    public WriteBehindBuffer(String name, Function<T, K> keyExtractor, Function<List<T>, Mono<?>> writer,
+                             int capacity, int flushSize, Duration flushInterval, MeterRegistry meterRegistry) {
+        Assert.isTrue(capacity > 0, "Capacity must be positive");
+        Assert.isTrue(flushSize > 0 && flushSize <= capacity, "Flush size must be between 1 and capacity");
+        this.keyExtractor = keyExtractor;
+        this.writer = writer;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.submitted = meterRegistry.counter("react.write-behind.submitted", "buffer", name);
+        this.coalesced = meterRegistry.counter("react.write-behind.coalesced", "buffer", name);
+        this.failures = meterRegistry.counter("react.write-behind.failures", "buffer", name);
+        this.flushTimer = meterRegistry.timer("react.write-behind.flush", "buffer", name);
+        this.flushSizes = meterRegistry.summary("react.write-behind.flush.size", "buffer", name);
+        meterRegistry.gauge("react.write-behind.pending", Tags.of("buffer", name), size);
+    }
+
+    public void start() {
+        ticker = Flux.interval(flushInterval, Schedulers.parallel())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush().onErrorResume(ex -> Mono.empty()), 0)
+                .subscribe();
+    }
+
+    /**
+     * Stops the timer, rejects further submits and writes out everything still pending, including changes
+     * that arrived while a flush was already running. Failed writes are logged and reported to their submitters.
+     */
+    public void close() {
+        closed = true;
+        if (ticker != null) {
+            ticker.dispose();
+        }
+        while (size.get() > 0 || runningFlush.get() != null) {
+            flush().onErrorResume(ex -> Mono.empty()).block();
+        }
+    }
+
+    public int getPendingCount() {
+        return size.get();
+    }
+
+    public Mono<Void> submit(T value) {
+        return Mono.defer(() -> {
+            if (closed) {
+                return Mono.error(new IllegalStateException("Write-behind buffer is closed"));
+            }
+            K key = keyExtractor.apply(value);
+            Assert.notNull(key, "Write-behind entries must have a key");
+            return Mono.<Boolean>create(sink -> {
+                if (!offer(key, value, sink)) {
+                    sink.success(Boolean.FALSE);
+                }
+            }).flatMap(rejected -> flush().then(Mono.defer(() -> submit(value))))
+                    .then();
+        });
+    }
+
+    private boolean offer(K key, T value, MonoSink<Boolean> sink) {
+        Pending<T> entry = pending.compute(key, (k, current) -> {
+            if (current != null) {
+                current.value = value;
+                current.sinks.add(sink);
+                coalesced.increment();
+                return current;
+            }
+            if (size.getAndUpdate(n -> n < capacity ? n + 1 : n) >= capacity) {
+                return null;
+            }
+            return new Pending<>(value, sink);
+        });
+        if (entry == null) {
+            return false;
+        }
+        submitted.increment();
+        if (size.get() >= flushSize || closed) {
+            flush().subscribe(null, ex -> { });
+        }
+        return true;
+    }
+
+    /**
+     * Writes all pending entries on {@link Schedulers#boundedElastic()}, so neither {@link #submit} nor the
+     * timer run the write themselves. If a flush is already running, the returned {@code Mono} completes
+     * together with it.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            Mono<Void> running = runningFlush.get();
+            if (running != null) {
+                return running;
+            }
+            AtomicReference<Mono<Void>> self = new AtomicReference<>();
+            Mono<Void> flush = Mono.defer(this::doFlush)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doOnTerminate(() -> runningFlush.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(flush);
+            if (!runningFlush.compareAndSet(null, flush)) {
+                return flush();
+            }
+            return flush;
+        });
+    }
+
+    private Mono<Void> doFlush() {
+        List<Pending<T>> batch = new ArrayList<>();
+        for (K key : pending.keySet()) {
+            Pending<T> entry = pending.remove(key);
+            if (entry != null) {
+                size.decrementAndGet();
+                batch.add(entry);
+            }
+        }
+        if (batch.isEmpty()) {
+            return Mono.empty();
+        }
+        List<T> values = new ArrayList<>(batch.size());
+        for (Pending<T> entry : batch) {
+            values.add(entry.value);
+        }
+        long start = System.nanoTime();
+        return writer.apply(values)
+                .doOnSuccess(result -> {
+                    flushTimer.record(Duration.ofNanos(System.nanoTime() - start));
+                    flushSizes.record(values.size());
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Flushed " + values.size() + " write-behind entries in " +
+                                Duration.ofNanos(System.nanoTime() - start).toMillis() + " ms");
+                    }
+                    batch.forEach(entry -> entry.sinks.forEach(sink -> sink.success()));
+                })
+                .doOnError(ex -> {
+                    failures.increment();
+                    logger.warn("Write-behind flush of " + values.size() + " entries failed", ex);
+                    batch.forEach(entry -> entry.sinks.forEach(sink -> sink.error(ex)));
+                })
+                .then();
+    }
+
+    private static class Pending<T> {
+
+        private T value;
+
+        private final List<MonoSink<Boolean>> sinks = new ArrayList<>();
+
+        Pending(T value, MonoSink<Boolean> sink) {
+            this.value = value;
+            this.sinks.add(sink);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package ru.sbertest.react;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.ConnectionAccessRejectedException;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.sbertest.react.repositories.StateRepository;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load and soak harness: runs committing and rolled back transactions (the way {@link Changer} does) mixed
+ * with reads against an embedded database, once per configured concurrency level and round, and reports
+ * throughput, latency percentiles and pool occupancy. Every operation works on a row of its own, so at the
+ * end the table shows exactly which deletes were committed.
+ * <p>
+ * Excluded from {@code test}; run with {@code gradle loadTest -Dreact.load.concurrency=8,64,512
+ * -Dreact.load.operations=5000 -Dreact.load.rounds=1}.
+ */
+@Tag("load")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:load;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:states-schema.sql"})
+class StateLoadTest {
+
+    private static final Log logger = LogFactory.getLog(StateLoadTest.class);
+
+    @MockBean
+    MainTester mainTester;
+
+    @Autowired
+    StateRepository repository;
+
+    @Autowired
+    ReactiveTransactionManager transactionManager;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${react.load.concurrency:8,64,512}")
+    List<Integer> concurrencyLevels;
+
+    @Value("${react.load.operations:5000}")
+    int operations;
+
+    @Value("${react.load.rounds:1}")
+    int rounds;
+
+    enum Kind { COMMIT, ROLLBACK, READ }
+
+    enum Outcome { COMMITTED, ROLLED_BACK, FOUND, MISSING, REJECTED }
+
+    @Test
+    void sweep() {
+        TransactionalOperator transactionalOperator = TransactionalOperator.create(transactionManager);
+        List<Sweep> sweeps = new ArrayList<>();
+        long firstId = 1;
+        for (int round = 1; round <= rounds; round++) {
+            for (int concurrency : concurrencyLevels) {
+                Sweep sweep = new Sweep(round, concurrency, firstId, operations);
+                firstId += operations;
+                seed(sweep);
+                run(sweep, transactionalOperator);
+                logger.info(sweep.report());
+                sweeps.add(sweep);
+            }
+        }
+
+        assertThat(awaitIdle(Duration.ofSeconds(5))).as("connections still in use").isZero();
+        assertThat(gaugeSum("react.db.limiter.inflight")).as("limiter permits still held").isZero();
+        assertThat(gaugeSum("react.db.lane.in-use")).as("lane permits still held").isZero();
+        sweeps.forEach(this::verify);
+    }
+
+    private void seed(Sweep sweep) {
+        List<Object[]> rows = new ArrayList<>(sweep.operations);
+        for (int i = 0; i < sweep.operations; i++) {
+            rows.add(new Object[]{sweep.id(i), sweep.state(i)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO states (id, state) VALUES (?, ?)", rows);
+    }
+
+    private void run(Sweep sweep, TransactionalOperator transactionalOperator) {
+        HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        Disposable sampler = Flux.interval(Duration.ofMillis(10))
+                .subscribe(tick -> sweep.sample(pool.getActiveConnections(), pool.getThreadsAwaitingConnection()));
+        long start = System.nanoTime();
+        try {
+            Flux.range(0, sweep.operations)
+                    .flatMap(i -> Mono.defer(() -> {
+                        long opStart = System.nanoTime();
+                        return operation(sweep, i, transactionalOperator)
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .doOnNext(outcome -> sweep.record(i, outcome, System.nanoTime() - opStart));
+                    }), sweep.concurrency)
+                    .blockLast(Duration.ofMinutes(10));
+        } finally {
+            sweep.elapsedNanos = System.nanoTime() - start;
+            sampler.dispose();
+        }
+    }
+
+    private Mono<Outcome> operation(Sweep sweep, int i, TransactionalOperator transactionalOperator) {
+        Mono<Outcome> operation;
+        switch (kind(i)) {
+            case COMMIT:
+                operation = repository.deleteByState(sweep.state(i))
+                        .as(transactionalOperator::transactional)
+                        .thenReturn(Outcome.COMMITTED);
+                break;
+            case ROLLBACK:
+                operation = repository.deleteByState(sweep.state(i))
+                        .then(Mono.<Outcome>error(new IntendedRollbackException()))
+                        .as(transactionalOperator::transactional)
+                        .onErrorReturn(IntendedRollbackException.class, Outcome.ROLLED_BACK);
+                break;
+            default:
+                // The row of the previous operation is never deleted for good: it belongs to a rollback.
+                operation = repository.selectByState(sweep.state(i - 1))
+                        .map(state -> Outcome.FOUND)
+                        .defaultIfEmpty(Outcome.MISSING);
+        }
+        return operation.onErrorReturn(ConnectionAccessRejectedException.class, Outcome.REJECTED);
+    }
+
+    private static Kind kind(int i) {
+        switch (i % 5) {
+            case 0:
+            case 1:
+                return Kind.COMMIT;
+            case 2:
+            case 3:
+                return Kind.ROLLBACK;
+            default:
+                return Kind.READ;
+        }
+    }
+
+    private int awaitIdle(Duration timeout) {
+        HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pool.getActiveConnections() > 0 && System.nanoTime() < deadline) {
+            Mono.delay(Duration.ofMillis(50)).block();
+        }
+        return pool.getActiveConnections();
+    }
+
+    private double gaugeSum(String name) {
+        return meterRegistry.find(name).gauges().stream().mapToDouble(Gauge::value).sum();
+    }
+
+    private void verify(Sweep sweep) {
+        Set<Long> remaining = new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM states WHERE id BETWEEN ? AND ?",
+                Long.class, sweep.id(0), sweep.id(sweep.operations - 1)));
+        for (int i = 0; i < sweep.operations; i++) {
+            Outcome outcome = sweep.outcomes[i];
+            String operation = sweep.name() + ", operation " + i + " (" + outcome + ")";
+            assertThat(outcome).as(operation + " did not finish").isNotNull();
+            assertThat(outcome).as(operation + " read a row that must exist").isNotEqualTo(Outcome.MISSING);
+            assertThat(remaining.contains(sweep.id(i)))
+                    .as(operation + " left the row " + (outcome == Outcome.COMMITTED ? "in place" : "deleted"))
+                    .isEqualTo(outcome != Outcome.COMMITTED);
+        }
+        assertThat(sweep.count(Outcome.COMMITTED)).as(sweep.name() + " committed nothing").isPositive();
+        assertThat(sweep.count(Outcome.ROLLED_BACK)).as(sweep.name() + " rolled nothing back").isPositive();
+    }
+
+    private static class Sweep {
+
+        private final int round;
+
+        private final int concurrency;
+
+        private final long firstId;
+
+        private final int operations;
+
+        private final Outcome[] outcomes;
+
+        private final long[] latencies;
+
+        private long elapsedNanos;
+
+        private long samples;
+
+        private long activeTotal;
+
+        private int activeMax;
+
+        private int waitingMax;
+
+        Sweep(int round, int concurrency, long firstId, int operations) {
+            this.round = round;
+            this.concurrency = concurrency;
+            this.firstId = firstId;
+            this.operations = operations;
+            this.outcomes = new Outcome[operations];
+            this.latencies = new long[operations];
+        }
+
+        long id(int i) {
+            return firstId + i;
+        }
+
+        int state(int i) {
+            return Math.toIntExact(id(i));
+        }
+
+        String name() {
+            return "round " + round + ", concurrency " + concurrency;
+        }
+
+        synchronized void record(int i, Outcome outcome, long latencyNanos) {
+            outcomes[i] = outcome;
+            latencies[i] = latencyNanos;
+        }
+
+        synchronized void sample(int active, int waiting) {
+            samples++;
+            activeTotal += active;
+            activeMax = Math.max(activeMax, active);
+            waitingMax = Math.max(waitingMax, waiting);
+        }
+
+        synchronized int count(Outcome outcome) {
+            return (int) Arrays.stream(outcomes).filter(o -> o == outcome).count();
+        }
+
+        synchronized String report() {
+            StringBuilder report = new StringBuilder(String.format("%s: %d operations in %d ms, %.0f ops/s",
+                    name(), operations, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    operations * 1e9 / elapsedNanos));
+            for (Kind kind : Kind.values()) {
+                long[] sorted = new long[operations];
+                int n = 0;
+                for (int i = 0; i < operations; i++) {
+                    if (kind(i) == kind && outcomes[i] != null && outcomes[i] != Outcome.REJECTED) {
+                        sorted[n++] = latencies[i];
+                    }
+                }
+                Arrays.sort(sorted, 0, n);
+                report.append(String.format(" | %s p50 %.1f ms p99 %.1f ms", kind.name().toLowerCase(),
+                        percentile(sorted, n, 50), percentile(sorted, n, 99)));
+            }
+            report.append(String.format(" | rejected %d | pool active avg %.1f max %d, waiting max %d",
+                    count(Outcome.REJECTED), samples == 0 ? 0.0 : (double) activeTotal / samples, activeMax,
+                    waitingMax));
+            return report.toString();
+        }
+
+        private static double percentile(long[] sorted, int n, int percentile) {
+            return n == 0 ? 0.0 : sorted[(n - 1) * percentile / 100] / 1e6;
+        }
+    }
+
+    private static class IntendedRollbackException extends Exception {
+
+        IntendedRollbackException() {
+            super("Rolled back on purpose", null, false, false);
+        }
+    }
+}
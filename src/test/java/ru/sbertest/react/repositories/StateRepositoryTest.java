@@ -0,0 +1,168 @@
+package ru.sbertest.react.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import ru.sbertest.react.MainTester;
+import ru.sbertest.react.entity.State;
+import ru.sbertest.react.entity.StateBatch;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class StateRepositoryTest {
+
+    private static final int ROWS = 1000;
+
+    @MockBean
+    MainTester mainTester;
+
+    @Autowired
+    StateRepository repository;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("DELETE FROM states");
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = 1; id <= ROWS; id++) {
+            rows.add(new Object[]{id, id == 1 ? null : id - 1, id == ROWS ? null : id + 1, (int) (id % 7)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO states (id, prev_state_id, next_state_id, state) VALUES (?, ?, ?, ?)",
+                rows);
+    }
+
+    @Test
+    void scanAllReadsEveryRowOnce() {
+        List<Long> ids = repository.scanAll(100, 2).map(State::getId).collectList().block();
+
+        assertThat(ids).hasSize(ROWS).doesNotHaveDuplicates().isSorted();
+    }
+
+    @Test
+    void scanDoesNotHoldConnectionWhileConsumerIsSlow() {
+        HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        AtomicInteger samples = new AtomicInteger();
+        AtomicInteger busy = new AtomicInteger();
+        Disposable sampler = Flux.interval(Duration.ofMillis(1)).subscribe(tick -> {
+            samples.incrementAndGet();
+            if (pool.getActiveConnections() > 0) {
+                busy.incrementAndGet();
+            }
+        });
+        try {
+            Long count = repository.scanAll(100, 1)
+                    .delayElements(Duration.ofMillis(1))
+                    .count()
+                    .block();
+            assertThat(count).isEqualTo(ROWS);
+        } finally {
+            sampler.dispose();
+        }
+
+        assertThat(busy.get()).as("samples with a connection checked out, of %d", samples.get())
+                .isLessThan(samples.get() / 5);
+        assertThat(pool.getActiveConnections()).isZero();
+    }
+
+    @Test
+    void chainByHopsMatchesRecursiveCte() {
+        for (StateRepository.ChainDirection direction : StateRepository.ChainDirection.values()) {
+            for (long startId : new long[]{1, 500, ROWS}) {
+                for (int maxDepth : new int[]{1, 15, 16, 17, 40}) {
+                    List<State> cte = repository.selectChain(startId, direction, maxDepth).collectList().block();
+                    List<State> hops = withoutRecursiveCte(() ->
+                            repository.selectChain(startId, direction, maxDepth).collectList().block());
+                    assertThat(hops).as("%s from %d, depth %d", direction, startId, maxDepth)
+                            .isNotEmpty()
+                            .isEqualTo(cte);
+                }
+            }
+        }
+        List<Long> ids = withoutRecursiveCte(() -> repository.selectChain(990L, StateRepository.ChainDirection.NEXT, 40)
+                .map(State::getId).collectList().block());
+        assertThat(ids).containsExactly(990L, 991L, 992L, 993L, 994L, 995L, 996L, 997L, 998L, 999L, 1000L);
+    }
+
+    @Test
+    void chainRejectsNonPositiveDepth() {
+        assertThatIllegalArgumentException().isThrownBy(() ->
+                repository.selectChain(1L, StateRepository.ChainDirection.NEXT, 0));
+        assertThatIllegalArgumentException().isThrownBy(() -> withoutRecursiveCte(() ->
+                repository.selectChain(1L, StateRepository.ChainDirection.NEXT, 0)));
+    }
+
+    @Test
+    void columnsMatchMappedRows() {
+        // nulls only in the first chunk of 100, so a bitmap not reset by clear() shows up in the next one
+        jdbcTemplate.update("UPDATE states SET state = NULL WHERE id <= 50");
+        jdbcTemplate.update("UPDATE states SET next_state_id = NULL WHERE id BETWEEN 20 AND 30");
+
+        assertColumnsMatch(null, 100, 10);
+        assertColumnsMatch(null, 300, 4);
+        assertColumnsMatch(3, 7, 20);
+        assertColumnsMatch(99, 100, 0);
+    }
+
+    private void assertColumnsMatch(Integer stateFilter, int chunkSize, int chunks) {
+        List<List<State>> read = repository.selectColumnsByState(stateFilter, chunkSize)
+                .map(StateRepositoryTest::toStates)
+                .collectList()
+                .block();
+        List<State> mapped = repository.scanAll(100, 1)
+                .filter(state -> stateFilter == null || stateFilter.equals(state.getState()))
+                .collectList()
+                .block();
+
+        assertThat(read).as("chunks of %d, state %s", chunkSize, stateFilter).hasSize(chunks)
+                .allSatisfy(chunk -> assertThat(chunk).isNotEmpty().hasSizeLessThanOrEqualTo(chunkSize));
+        assertThat(read.stream().flatMap(List::stream).collect(Collectors.toList()))
+                .as("chunks of %d, state %s", chunkSize, stateFilter)
+                .containsExactlyInAnyOrderElementsOf(mapped);
+    }
+
+    private static List<State> toStates(StateBatch batch) {
+        List<State> states = new ArrayList<>();
+        for (int row = 0; row < batch.size(); row++) {
+            states.add(new State()
+                    .setId(batch.getId(row))
+                    .setPrevStateId(batch.isPrevStateIdNull(row) ? null : batch.getPrevStateId(row))
+                    .setNextStateId(batch.isNextStateIdNull(row) ? null : batch.getNextStateId(row))
+                    .setState(batch.isStateNull(row) ? null : batch.getState(row)));
+        }
+        return states;
+    }
+
+    private <T> T withoutRecursiveCte(Supplier<T> action) {
+        ReflectionTestUtils.setField(repository, "chainRecursiveCte", false);
+        try {
+            return action.get();
+        } finally {
+            ReflectionTestUtils.setField(repository, "chainRecursiveCte", true);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.sbertest.react.springbatis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.ConnectionAccessGate.Permit;
+import org.springframework.jdbc.datasource.ConnectionAccessRejectedException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 1, Duration.ofSeconds(5));
+        Permit held = acquire(limiter).block();
+        Disposable queued = acquire(limiter).subscribe(permit -> permit.release(false));
+
+        StepVerifier.create(acquire(limiter))
+                .expectError(ConnectionAccessRejectedException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(meterRegistry.counter("react.db.limiter.rejected", "reason", "queue-full").count()).isEqualTo(1);
+
+        queued.dispose();
+        held.release(true);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void rejectsAfterMaxWait() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10, Duration.ofMillis(50));
+        Permit held = acquire(limiter).block();
+
+        StepVerifier.create(acquire(limiter))
+                .expectError(ConnectionAccessRejectedException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(meterRegistry.counter("react.db.limiter.rejected", "reason", "timeout").count()).isEqualTo(1);
+
+        held.release(true);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void cancelWhileQueuedGivesUpTheTurn() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10, Duration.ofSeconds(5));
+        Permit held = acquire(limiter).block();
+        AtomicReference<Permit> granted = new AtomicReference<>();
+        Disposable queued = acquire(limiter).subscribe(granted::set);
+        assertThat(limiter.getQueued()).isEqualTo(1);
+
+        queued.dispose();
+        assertThat(limiter.getQueued()).isZero();
+        held.release(true);
+
+        assertThat(granted.get()).isNull();
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void cancelRacingWithGrantDoesNotLeakPermit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10, Duration.ofSeconds(5));
+        for (int i = 0; i < 500; i++) {
+            Permit held = acquire(limiter).block();
+            AtomicReference<Permit> granted = new AtomicReference<>();
+            Disposable queued = acquire(limiter).subscribe(granted::set);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(2);
+            Schedulers.parallel().schedule(() -> race(start, done, () -> held.release(true)));
+            Schedulers.parallel().schedule(() -> race(start, done, queued::dispose));
+            start.countDown();
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            if (granted.get() != null) {
+                granted.get().release(true);
+            }
+            assertThat(limiter.getInflight()).as("iteration %d", i).isZero();
+            assertThat(limiter.getQueued()).as("iteration %d", i).isZero();
+        }
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsFlatAndShrinksWhenItRises() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 1, 50, 100, Duration.ofSeconds(5));
+        for (int round = 0; round < 50; round++) {
+            holdAll(limiter, 1);
+        }
+        int grown = limiter.getLimit();
+        assertThat(grown).isGreaterThan(10);
+
+        for (int round = 0; round < 10; round++) {
+            holdAll(limiter, 20);
+        }
+        assertThat(limiter.getLimit()).isLessThan(grown);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void releaseIntoDeepQueueDoesNotRecurse() {
+        int queued = 10_000;
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, queued, Duration.ofSeconds(30));
+        Permit held = acquire(limiter).block();
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < queued; i++) {
+            limiter.guard(Flux.just(i)).subscribe(value -> { }, ex -> { }, completed::incrementAndGet);
+        }
+        assertThat(limiter.getQueued()).isEqualTo(queued);
+
+        held.release(true);
+
+        assertThat(completed.get()).isEqualTo(queued);
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                                               Duration maxWait) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, maxQueue, maxWait, meterRegistry);
+    }
+
+    private static Mono<Permit> acquire(AdaptiveConcurrencyLimiter limiter) {
+        return limiter.acquire(Context.empty(), null);
+    }
+
+    /**
+     * Takes every permit under the current limit, holds them for {@code millis} and releases them.
+     */
+    private static void holdAll(AdaptiveConcurrencyLimiter limiter, long millis) throws InterruptedException {
+        List<Permit> permits = new ArrayList<>();
+        for (int i = limiter.getLimit(); i > 0; i--) {
+            permits.add(acquire(limiter).block());
+        }
+        Thread.sleep(millis);
+        permits.forEach(permit -> permit.release(true));
+    }
+
+    private static void race(CountDownLatch start, CountDownLatch done, Runnable action) {
+        try {
+            start.await();
+            action.run();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ru.sbertest.react.springbatis;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.sbertest.react.entity.State;
+import ru.sbertest.react.mappers.StateMapper;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class PrecompiledResultMappingInterceptorTest {
+
+    private static final String MAPPER_CLASS = "ru.sbertest.react.mappers.StateMapper.";
+
+    private final DataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:precompiled;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+
+    private SqlSessionFactory defaultMapping;
+
+    private SqlSessionFactory precompiledMapping;
+
+    private EntityRowMapper<?> rowMapper;
+
+    @BeforeEach
+    void seed() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS states");
+        jdbcTemplate.execute("CREATE TABLE states (id BIGINT PRIMARY KEY, prev_state_id BIGINT, " +
+                "next_state_id BIGINT, state INT)");
+        for (long id = 1; id <= 10; id++) {
+            jdbcTemplate.update("INSERT INTO states VALUES (?, ?, ?, ?)", id, id == 1 ? null : id - 1,
+                    id == 10 ? null : id + 1, id % 4 == 0 ? null : (int) (id % 3));
+        }
+        configure(configuration -> {
+        });
+    }
+
+    @Test
+    void fullRowsWithNullColumns() throws Exception {
+        assertSameResults(session -> session.selectList(MAPPER_CLASS + "selectList",
+                query(Wrappers.<State>query())));
+    }
+
+    @Test
+    void partialColumnLists() throws Exception {
+        assertSameResults(session -> session.selectList(MAPPER_CLASS + "selectList",
+                query(Wrappers.<State>query().select("id", "state"))));
+        assertSameResults(session -> session.selectList(MAPPER_CLASS + "selectList",
+                query(Wrappers.<State>query().select("prev_state_id"))));
+    }
+
+    @Test
+    void selectById() throws Exception {
+        for (long id : new long[]{1, 4, 10, 11}) {
+            assertSameResults(session -> session.selectOne(MAPPER_CLASS + "selectById", id));
+        }
+    }
+
+    @Test
+    void unmappedColumnsAreIgnored() throws Exception {
+        assertSameResults(session -> session.selectList(MAPPER_CLASS + "selectList",
+                query(Wrappers.<State>query().select("id", "state", "id * 2 AS doubled", "state AS st"))));
+    }
+
+    @Test
+    void resultHandlerGoesToMyBatis() throws Exception {
+        Function<SqlSession, List<Object>> handled = session -> {
+            List<Object> rows = new ArrayList<>();
+            session.select(MAPPER_CLASS + "selectList", query(Wrappers.<State>query()),
+                    context -> rows.add(context.getResultObject()));
+            return rows;
+        };
+
+        assertThat(run(precompiledMapping, handled)).isEqualTo(run(defaultMapping, handled)).hasSize(10);
+        verify(rowMapper, never()).mapRows(any(), any());
+    }
+
+    @Test
+    void nullHandlingSettings() throws Exception {
+        List<Consumer<MybatisConfiguration>> settings = List.of(
+                configuration -> configuration.setCallSettersOnNulls(true),
+                configuration -> configuration.setReturnInstanceForEmptyRow(true),
+                configuration -> {
+                    configuration.setCallSettersOnNulls(true);
+                    configuration.setReturnInstanceForEmptyRow(true);
+                });
+        for (Consumer<MybatisConfiguration> setting : settings) {
+            configure(setting);
+            fullRowsWithNullColumns();
+            partialColumnLists();
+            unmappedColumnsAreIgnored();
+        }
+    }
+
+    private void assertSameResults(Function<SqlSession, Object> query) throws Exception {
+        clearInvocations(rowMapper);
+        Object precompiled = run(precompiledMapping, query);
+        verify(rowMapper, atLeastOnce()).mapRows(any(ResultSet.class), any());
+
+        assertThat(precompiled).isEqualTo(run(defaultMapping, query));
+    }
+
+    private static <R> R run(SqlSessionFactory sqlSessionFactory, Function<SqlSession, R> query) {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            return query.apply(session);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void configure(Consumer<MybatisConfiguration> settings) {
+        PrecompiledResultMappingInterceptor interceptor = new PrecompiledResultMappingInterceptor(
+                "ru.sbertest.react.entity");
+        Map<Class<?>, EntityRowMapper<?>> mappers =
+                (Map<Class<?>, EntityRowMapper<?>>) ReflectionTestUtils.getField(interceptor, "mappers");
+        rowMapper = spy(mappers.get(State.class));
+        mappers.put(State.class, rowMapper);
+        defaultMapping = sqlSessionFactory(settings, null);
+        precompiledMapping = sqlSessionFactory(settings, interceptor);
+    }
+
+    private SqlSessionFactory sqlSessionFactory(Consumer<MybatisConfiguration> settings,
+                                                PrecompiledResultMappingInterceptor interceptor) {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setEnvironment(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        settings.accept(configuration);
+        if (interceptor != null) {
+            configuration.addInterceptor(interceptor);
+        }
+        configuration.addMapper(StateMapper.class);
+        return new MybatisSqlSessionFactoryBuilder().build(configuration);
+    }
+
+    private static Map<String, Object> query(QueryWrapper<State> wrapper) {
+        Map<String, Object> param = new MapperMethod.ParamMap<>();
+        param.put("ew", wrapper);
+        param.put("param1", wrapper);
+        return param;
+    }
+}
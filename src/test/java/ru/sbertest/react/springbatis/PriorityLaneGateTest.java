@@ -0,0 +1,197 @@
+package ru.sbertest.react.springbatis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.ConnectionAccessGate.Permit;
+import org.springframework.jdbc.datasource.ConnectionAccessRejectedException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.sbertest.react.springbatis.ConnectionPriority.BATCH;
+import static ru.sbertest.react.springbatis.ConnectionPriority.INTERACTIVE;
+
+class PriorityLaneGateTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void reservedConnectionsStayAvailableToTheirLane() {
+        PriorityLaneGate gate = gate(4, 1, 1, 0, 1, Duration.ofSeconds(5));
+        List<Permit> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(acquire(gate, BATCH).block());
+        }
+        AtomicReference<Permit> fourthBatch = new AtomicReference<>();
+        Disposable waiting = acquire(gate, BATCH).subscribe(fourthBatch::set);
+
+        Permit interactive = acquire(gate, INTERACTIVE).block(Duration.ofSeconds(1));
+        assertThat(interactive).isNotNull();
+        assertThat(fourthBatch.get()).isNull();
+
+        batch.get(0).release(true);
+        assertThat(fourthBatch.get()).isNotNull();
+
+        waiting.dispose();
+        fourthBatch.get().release(true);
+        interactive.release(true);
+        batch.subList(1, 3).forEach(permit -> permit.release(true));
+        assertThat(inUse()).isZero();
+    }
+
+    @Test
+    void waitingLanesShareConnectionsByWeight() {
+        PriorityLaneGate gate = gate(1, 0, 3, 0, 1, Duration.ofSeconds(5));
+        Permit held = acquire(gate, INTERACTIVE).block();
+        ArrayDeque<Permit> granted = new ArrayDeque<>();
+        List<ConnectionPriority> order = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            for (ConnectionPriority priority : ConnectionPriority.values()) {
+                acquire(gate, priority).subscribe(permit -> {
+                    order.add(priority);
+                    granted.add(permit);
+                });
+            }
+        }
+
+        held.release(true);
+        for (int i = 0; i < 40; i++) {
+            granted.poll().release(true);
+        }
+
+        List<ConnectionPriority> first = order.subList(0, 40);
+        assertThat(first.stream().filter(INTERACTIVE::equals).count()).isEqualTo(30);
+        assertThat(first.stream().filter(BATCH::equals).count()).isEqualTo(10);
+        while (!granted.isEmpty()) {
+            granted.poll().release(true);
+        }
+        assertThat(order).hasSize(80);
+        assertThat(inUse()).isZero();
+    }
+
+    @Test
+    void rejectsAfterMaxWait() {
+        PriorityLaneGate gate = gate(1, 0, 1, 0, 1, Duration.ofMillis(50));
+        Permit held = acquire(gate, BATCH).block();
+
+        StepVerifier.create(acquire(gate, BATCH))
+                .expectError(ConnectionAccessRejectedException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(meterRegistry.get("react.db.lane.pending").tag("lane", "batch").gauge().value()).isZero();
+
+        held.release(true);
+        assertThat(inUse()).isZero();
+    }
+
+    @Test
+    void cancelRacingWithGrantDoesNotLeakPermit() throws Exception {
+        PriorityLaneGate gate = gate(1, 0, 1, 0, 1, Duration.ofSeconds(5));
+        for (int i = 0; i < 500; i++) {
+            Permit held = acquire(gate, INTERACTIVE).block();
+            AtomicReference<Permit> granted = new AtomicReference<>();
+            Disposable queued = acquire(gate, BATCH).subscribe(granted::set);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(2);
+            Schedulers.parallel().schedule(() -> race(start, done, () -> held.release(true)));
+            Schedulers.parallel().schedule(() -> race(start, done, queued::dispose));
+            start.countDown();
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            if (granted.get() != null) {
+                granted.get().release(true);
+            }
+            assertThat(inUse()).as("iteration %d", i).isZero();
+        }
+    }
+
+    @Test
+    void lanesShareOnlyTheLimiterLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2, 10, Duration.ofSeconds(5),
+                meterRegistry);
+        PriorityLaneGate gate = new PriorityLaneGate(10, limiter, settings(0, 1, 0, 1), Duration.ofSeconds(5),
+                meterRegistry);
+        Permit first = acquire(gate, BATCH).block();
+        Permit second = acquire(gate, BATCH).block();
+        AtomicReference<Permit> interactive = new AtomicReference<>();
+        acquire(gate, INTERACTIVE).subscribe(interactive::set);
+
+        assertThat(interactive.get()).isNull();
+        assertThat(limiter.getInflight()).isEqualTo(2);
+        assertThat(limiter.getQueued()).isZero();
+
+        first.release(true);
+        assertThat(interactive.get()).isNotNull();
+        interactive.get().release(true);
+        second.release(true);
+        assertThat(limiter.getInflight()).isZero();
+        assertThat(inUse()).isZero();
+    }
+
+    @Test
+    void releaseIntoDeepQueueDoesNotRecurse() {
+        int queued = 10_000;
+        PriorityLaneGate gate = gate(1, 0, 1, 0, 1, Duration.ofSeconds(30));
+        Permit held = acquire(gate, INTERACTIVE).block();
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < queued; i++) {
+            ConnectionPriority priority = i % 2 == 0 ? INTERACTIVE : BATCH;
+            gate.guard(Flux.just(i)).contextWrite(priority.asContext())
+                    .subscribe(value -> { }, ex -> { }, completed::incrementAndGet);
+        }
+
+        held.release(true);
+
+        assertThat(completed.get()).isEqualTo(queued);
+        assertThat(meterRegistry.get("react.db.lane.pending").gauges())
+                .allSatisfy(pending -> assertThat(pending.value()).isZero());
+        assertThat(inUse()).isZero();
+    }
+
+    private PriorityLaneGate gate(int capacity, int interactiveReserved, int interactiveWeight, int batchReserved,
+                                  int batchWeight, Duration maxWait) {
+        return new PriorityLaneGate(capacity,
+                settings(interactiveReserved, interactiveWeight, batchReserved, batchWeight), maxWait, meterRegistry);
+    }
+
+    private static Map<ConnectionPriority, PriorityLaneGate.LaneSettings> settings(int interactiveReserved,
+                                                                                   int interactiveWeight,
+                                                                                   int batchReserved,
+                                                                                   int batchWeight) {
+        Map<ConnectionPriority, PriorityLaneGate.LaneSettings> settings = new EnumMap<>(ConnectionPriority.class);
+        settings.put(INTERACTIVE, new PriorityLaneGate.LaneSettings(interactiveReserved, interactiveWeight));
+        settings.put(BATCH, new PriorityLaneGate.LaneSettings(batchReserved, batchWeight));
+        return settings;
+    }
+
+    private static Mono<Permit> acquire(PriorityLaneGate gate, ConnectionPriority priority) {
+        return gate.acquire(priority.asContext(), null);
+    }
+
+    private double inUse() {
+        return meterRegistry.find("react.db.lane.in-use").gauges().stream().mapToDouble(g -> g.value()).sum();
+    }
+
+    private static void race(CountDownLatch start, CountDownLatch done, Runnable action) {
+        try {
+            start.await();
+            action.run();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package ru.sbertest.react.springbatis;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import reactor.core.publisher.Mono;
+import ru.sbertest.react.MainTester;
+import ru.sbertest.react.entity.State;
+import ru.sbertest.react.repositories.StateRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class UnitOfWorkTest {
+
+    private static final String DELETE = "ru.sbertest.react.mappers.StateMapper.delete";
+
+    private static final String UPDATE_BY_ID = "ru.sbertest.react.mappers.StateMapper.updateById";
+
+    @MockBean
+    MainTester mainTester;
+
+    @Autowired
+    SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    StateRepository repository;
+
+    @Autowired
+    ReactiveTransactionManager transactionManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("DELETE FROM states");
+        for (long id = 1; id <= 6; id++) {
+            jdbcTemplate.update("INSERT INTO states (id, state) VALUES (?, ?)", id, (int) (id % 3));
+        }
+    }
+
+    @Test
+    void identicalConsecutiveDeletesAreSentOnce() {
+        SqlSession session = flush(unitOfWork -> {
+            unitOfWork.record(DELETE, deleteByState(1));
+            unitOfWork.record(DELETE, deleteByState(1));
+        });
+
+        verify(session, times(1)).update(anyString(), any());
+    }
+
+    @Test
+    void deletesWithDifferentValuesAreBothSent() {
+        SqlSession session = flush(unitOfWork -> {
+            unitOfWork.record(DELETE, deleteByState(1));
+            unitOfWork.record(DELETE, deleteByState(2));
+        });
+
+        verify(session, times(2)).update(anyString(), any());
+    }
+
+    @Test
+    void identicalDeletesSeparatedByAnotherWriteAreBothSent() {
+        SqlSession session = flush(unitOfWork -> {
+            unitOfWork.record(DELETE, deleteByState(1));
+            unitOfWork.record(UPDATE_BY_ID, updateById(new State().setId(5L).setState(1)));
+            unitOfWork.record(DELETE, deleteByState(1));
+        });
+
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        verify(session, times(3)).update(statements.capture(), any());
+        assertThat(statements.getAllValues()).containsExactly(DELETE, UPDATE_BY_ID, DELETE);
+    }
+
+    @Test
+    void deferredWritesAreAppliedOnCommit() {
+        TransactionalOperator transactionalOperator = TransactionalOperator.create(transactionManager);
+
+        Integer seenFromOutside = repository.deleteByState(1)
+                .then(repository.deleteByState(1))
+                .then(Mono.fromCallable(this::count))
+                .as(transactionalOperator::transactional)
+                .contextWrite(UnitOfWork.deferWrites())
+                .block(Duration.ofSeconds(5));
+
+        assertThat(seenFromOutside).isEqualTo(6);
+        assertThat(count()).isEqualTo(4);
+    }
+
+    @Test
+    void deferredWritesAreDiscardedOnRollback() {
+        TransactionalOperator transactionalOperator = TransactionalOperator.create(transactionManager);
+
+        assertThatThrownBy(() -> repository.deleteByState(1)
+                .then(repository.deleteByState(2))
+                .then(Mono.error(new IllegalStateException("rolled back on purpose")))
+                .as(transactionalOperator::transactional)
+                .contextWrite(UnitOfWork.deferWrites())
+                .block(Duration.ofSeconds(5)))
+                .hasMessageContaining("rolled back on purpose");
+        assertThat(count()).isEqualTo(6);
+
+        repository.deleteByState(0)
+                .as(transactionalOperator::transactional)
+                .contextWrite(UnitOfWork.deferWrites())
+                .block(Duration.ofSeconds(5));
+        assertThat(count()).as("only the writes of the second transaction").isEqualTo(4);
+    }
+
+    @Test
+    void requiresNewTransactionLeavesOuterWritesPending() {
+        TransactionalOperator outer = TransactionalOperator.create(transactionManager);
+        TransactionalOperator inner = TransactionalOperator.create(transactionManager,
+                new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        Mono<Integer> work = repository.deleteByState(1)
+                .then(repository.selectChain(1L, StateRepository.ChainDirection.NEXT, 1).then()
+                        .as(inner::transactional))
+                .then(Mono.fromCallable(this::count));
+
+        assertThatThrownBy(() -> work
+                .then(Mono.error(new IllegalStateException("rolled back on purpose")))
+                .as(outer::transactional)
+                .contextWrite(UnitOfWork.deferWrites())
+                .block(Duration.ofSeconds(5)))
+                .hasMessageContaining("rolled back on purpose");
+        assertThat(count()).as("outer writes rolled back").isEqualTo(6);
+
+        Integer seenAfterInner = work
+                .as(outer::transactional)
+                .contextWrite(UnitOfWork.deferWrites())
+                .block(Duration.ofSeconds(5));
+        assertThat(seenAfterInner).as("not committed by the inner transaction").isEqualTo(6);
+        assertThat(count()).as("committed with the outer transaction").isEqualTo(4);
+    }
+
+    private SqlSession flush(Consumer<UnitOfWork> writes) {
+        SqlSession session = mock(SqlSession.class);
+        List<Integer> batches = new ArrayList<>();
+        UnitOfWork unitOfWork = new UnitOfWork(this, sqlSessionFactory.getConfiguration(), batch -> {
+            batches.add(1);
+            batch.accept(session);
+            return Mono.empty();
+        });
+        writes.accept(unitOfWork);
+        unitOfWork.flush().block(Duration.ofSeconds(5));
+        assertThat(batches).as("sent as one batch").hasSize(1);
+        return session;
+    }
+
+    private Integer count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM states", Integer.class);
+    }
+
+    private static Map<String, Object> deleteByState(int state) {
+        Map<String, Object> param = new MapperMethod.ParamMap<>();
+        QueryWrapper<State> wrapper = Wrappers.<State>query().eq("state", state);
+        param.put("ew", wrapper);
+        param.put("param1", wrapper);
+        return param;
+    }
+
+    private static Map<String, Object> updateById(State state) {
+        Map<String, Object> param = new MapperMethod.ParamMap<>();
+        param.put("et", state);
+        param.put("param1", state);
+        return param;
+    }
+}
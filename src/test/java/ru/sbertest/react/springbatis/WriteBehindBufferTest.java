@@ -0,0 +1,194 @@
+package ru.sbertest.react.springbatis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WriteBehindBufferTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<List<Entry>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void keepsOnlyLatestChangePerKey() throws Exception {
+        WriteBehindBuffer<Integer, Entry> buffer = buffer(10, 10, values -> Mono.empty());
+
+        CompletableFuture<Void> first = buffer.submit(new Entry(1, "a")).toFuture();
+        CompletableFuture<Void> second = buffer.submit(new Entry(1, "b")).toFuture();
+        CompletableFuture<Void> other = buffer.submit(new Entry(2, "c")).toFuture();
+        assertThat(buffer.getPendingCount()).isEqualTo(2);
+        buffer.flush().block(Duration.ofSeconds(5));
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder(new Entry(1, "b"), new Entry(2, "c"));
+        CompletableFuture.allOf(first, second, other).get(5, TimeUnit.SECONDS);
+        assertThat(meterRegistry.counter("react.write-behind.coalesced", "buffer", "test").count()).isEqualTo(1);
+    }
+
+    @Test
+    void flushReachedBySubmitRunsOffTheCallerThread() throws Exception {
+        Set<Thread> writerThreads = Collections.synchronizedSet(new HashSet<>());
+        WriteBehindBuffer<Integer, Entry> buffer = buffer(10, 2, values -> {
+            writerThreads.add(Thread.currentThread());
+            return Mono.empty();
+        });
+
+        buffer.submit(new Entry(1, "a")).subscribe();
+        buffer.submit(new Entry(2, "b")).toFuture().get(5, TimeUnit.SECONDS);
+
+        assertThat(writerThreads).hasSize(1).doesNotContain(Thread.currentThread());
+    }
+
+    @Test
+    void fullBufferWaitsForFlushThenAccepts() throws Exception {
+        Sinks.Empty<Void> firstWrite = Sinks.empty();
+        WriteBehindBuffer<Integer, Entry> buffer = buffer(2, 2,
+                values -> batches.size() == 1 ? firstWrite.asMono() : Mono.empty());
+
+        CompletableFuture<Void> s1 = buffer.submit(new Entry(1, "a")).toFuture();
+        CompletableFuture<Void> s2 = buffer.submit(new Entry(2, "b")).toFuture();
+        await(() -> batches.size() == 1);
+        CompletableFuture<Void> s3 = buffer.submit(new Entry(3, "c")).toFuture();
+        CompletableFuture<Void> s4 = buffer.submit(new Entry(4, "d")).toFuture();
+        CompletableFuture<Void> s5 = buffer.submit(new Entry(5, "e")).toFuture();
+
+        Thread.sleep(100);
+        assertThat(s5).isNotDone();
+        assertThat(buffer.getPendingCount()).isEqualTo(2);
+
+        firstWrite.tryEmitEmpty();
+        CompletableFuture.allOf(s1, s2, s3, s4).get(5, TimeUnit.SECONDS);
+        await(() -> buffer.getPendingCount() == 1);
+        assertThat(s5).isNotDone();
+        buffer.flush().block(Duration.ofSeconds(5));
+        s5.get(5, TimeUnit.SECONDS);
+
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder(new Entry(1, "a"), new Entry(2, "b"));
+        assertThat(batches.get(1)).containsExactlyInAnyOrder(new Entry(3, "c"), new Entry(4, "d"));
+        assertThat(batches.get(2)).containsExactly(new Entry(5, "e"));
+    }
+
+    @Test
+    void failedFlushFailsEveryCoalescedSubmit() {
+        IllegalStateException failure = new IllegalStateException("database down");
+        WriteBehindBuffer<Integer, Entry> buffer = buffer(10, 10, values -> Mono.error(failure));
+
+        CompletableFuture<Void> first = buffer.submit(new Entry(1, "a")).toFuture();
+        CompletableFuture<Void> second = buffer.submit(new Entry(1, "b")).toFuture();
+        CompletableFuture<Void> other = buffer.submit(new Entry(2, "c")).toFuture();
+
+        assertThatThrownBy(() -> buffer.flush().block(Duration.ofSeconds(5))).isSameAs(failure);
+        for (CompletableFuture<Void> submit : List.of(first, second, other)) {
+            assertThatThrownBy(() -> submit.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCause(failure);
+        }
+        assertThat(buffer.getPendingCount()).isZero();
+        assertThat(meterRegistry.counter("react.write-behind.failures", "buffer", "test").count()).isEqualTo(1);
+    }
+
+    @Test
+    void closeWritesEverythingPending() throws Exception {
+        WriteBehindBuffer<Integer, Entry> buffer = buffer(10, 10, values -> Mono.empty());
+        buffer.start();
+
+        CompletableFuture<Void> first = buffer.submit(new Entry(1, "a")).toFuture();
+        CompletableFuture<Void> second = buffer.submit(new Entry(2, "b")).toFuture();
+        buffer.close();
+
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertThat(buffer.getPendingCount()).isZero();
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder(new Entry(1, "a"), new Entry(2, "b"));
+    }
+
+    @Test
+    void closeWritesChangesSubmittedDuringRunningFlush() throws Exception {
+        Sinks.Empty<Void> firstWrite = Sinks.empty();
+        WriteBehindBuffer<Integer, Entry> buffer = buffer(10, 10,
+                values -> batches.size() == 1 ? firstWrite.asMono() : Mono.empty());
+
+        CompletableFuture<Void> first = buffer.submit(new Entry(1, "a")).toFuture();
+        buffer.flush().subscribe();
+        await(() -> batches.size() == 1);
+        CompletableFuture<Void> second = buffer.submit(new Entry(2, "b")).toFuture();
+        CompletableFuture<Void> closing = CompletableFuture.runAsync(buffer::close);
+        Thread.sleep(50);
+        assertThat(closing).isNotDone();
+
+        firstWrite.tryEmitEmpty();
+        closing.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertThat(buffer.getPendingCount()).isZero();
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(1)).containsExactly(new Entry(2, "b"));
+        assertThatThrownBy(() -> buffer.submit(new Entry(3, "c")).block(Duration.ofSeconds(5)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private WriteBehindBuffer<Integer, Entry> buffer(int capacity, int flushSize,
+                                                     Function<List<Entry>, Mono<?>> writer) {
+        return new WriteBehindBuffer<>("test", Entry::getKey, values -> {
+            batches.add(values);
+            return writer.apply(values);
+        }, capacity, flushSize, Duration.ofHours(1), meterRegistry);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static class Entry {
+
+        private final Integer key;
+
+        private final String value;
+
+        Entry(Integer key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        Integer getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && key.equals(((Entry) other).key) && value.equals(((Entry) other).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,3 @@
+DROP TABLE IF EXISTS states;
+CREATE TABLE states (id BIGINT PRIMARY KEY, prev_state_id BIGINT, next_state_id BIGINT, state INT);
+CREATE INDEX states_state_idx ON states (state);